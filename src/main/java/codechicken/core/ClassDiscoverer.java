@@ -1,29 +1,51 @@
 package codechicken.core;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import net.minecraft.launchwrapper.Launch;
-
-import org.objectweb.asm.tree.ClassNode;
-
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 
 import codechicken.core.launch.CodeChickenCorePlugin;
-import codechicken.lib.asm.ASMHelper;
+import codechicken.lib.asm.ClassHeader;
 import cpw.mods.fml.common.FMLLog;
 import cpw.mods.fml.common.Loader;
 import cpw.mods.fml.common.ModClassLoader;
 import cpw.mods.fml.relauncher.CoreModManager;
 
+/**
+ * Finds classes on the mod classpath that directly extend or implement all of the given superclasses. Sources are
+ * listed and the files accepted by the matcher are read in parallel, checking only the class headers. The matching
+ * class names from each jar are remembered in an index on disk, keyed by the matcher's
+ * {@link IStringMatcher#indexKey()} and the jar's size and modification time, so unchanged jars are not reopened on
+ * later launches. The matcher itself is only called on the thread calling {@link #findClasses()}.
+ */
 public class ClassDiscoverer {
 
+    /**
+     * Set to false to scan every jar on every launch
+     */
+    public static boolean useIndex = true;
+
     public IStringMatcher matcher;
     public String[] superclasses;
     public ArrayList<Class<?>> classes;
@@ -57,20 +79,16 @@ public class ClassDiscoverer {
         return classes;
     }
 
-    private void checkAddClass(String resource) {
-        try {
-            String classname = resource.replace(".class", "").replace("\\", ".").replace("/", ".");
-            byte[] bytes = Launch.classLoader.getClassBytes(classname);
-            if (bytes == null) return;
+    private boolean matchesSuperclasses(byte[] bytes) {
+        ClassHeader header = ClassHeader.read(bytes);
+        if (header == null) return false;
 
-            ClassNode cnode = ASMHelper.createClassNode(bytes);
-            for (String superclass : superclasses)
-                if (!cnode.interfaces.contains(superclass) && !cnode.superName.equals(superclass)) return;
+        for (String superclass : superclasses) if (!header.extendsDirectly(superclass)) return false;
+        return true;
+    }
 
-            addClass(classname);
-        } catch (IOException e) {
-            CodeChickenCorePlugin.logger.error("Unable to load class: " + resource, e);
-        }
+    private static String toClassName(String resource) {
+        return resource.replace(".class", "").replace("\\", ".").replace("/", ".");
     }
 
     private void addClass(String classname) {
@@ -82,11 +100,12 @@ public class ClassDiscoverer {
         }
     }
 
-    private void findClasspathMods() {
+    private void findClasspathMods() throws InterruptedException {
         List<String> knownLibraries = ImmutableList.<String>builder().addAll(modClassLoader.getDefaultLibraries())
                 .addAll(CoreModManager.getLoadedCoremods()).build();
         File[] minecraftSources = modClassLoader.getParentSources();
         HashSet<String> searchedSources = new HashSet<String>();
+        List<File> sources = new ArrayList<File>();
         for (File minecraftSource : minecraftSources) {
             if (searchedSources.contains(minecraftSource.getAbsolutePath())) continue;
             searchedSources.add(minecraftSource.getAbsolutePath());
@@ -96,45 +115,276 @@ public class ClassDiscoverer {
                     FMLLog.fine(
                             "Found a minecraft related file at %s, examining for codechicken classes",
                             minecraftSource.getAbsolutePath());
-                    try {
-                        readFromZipFile(minecraftSource);
-                    } catch (Exception e) {
-                        CodeChickenCorePlugin.logger.error(
-                                "Failed to scan " + minecraftSource.getAbsolutePath() + ", the zip file is invalid",
-                                e);
-                    }
+                    sources.add(minecraftSource);
                 }
             } else if (minecraftSource.isDirectory()) {
                 FMLLog.fine(
                         "Found a minecraft related directory at %s, examining for codechicken classes",
                         minecraftSource.getAbsolutePath());
-                readFromDirectory(minecraftSource, minecraftSource);
+                sources.add(minecraftSource);
             }
         }
+        if (sources.isEmpty()) return;
+
+        String query = useIndex ? queryKey() : null;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(sources.size(), Runtime.getRuntime().availableProcessors()),
+                r -> {
+                    Thread t = new Thread(r, "CCC Class Discoverer");
+                    t.setDaemon(true);
+                    return t;
+                });
+        try {
+            // list the sources not in the index, then check the classes the matcher accepts
+            List<List<String>> indexed = new ArrayList<>(sources.size());
+            List<Future<List<String>>> listings = new ArrayList<>(sources.size());
+            for (File source : sources) {
+                List<String> classes = query != null && source.isFile() ? Index.get(query, source) : null;
+                indexed.add(classes);
+                listings.add(classes != null ? null : executor.submit(() -> listSource(source)));
+            }
+
+            // the matcher is only called on this thread
+            List<Future<List<String>>> results = new ArrayList<>(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                File source = sources.get(i);
+                List<String> names = getScan(source, listings.get(i));
+                if (names == null) {
+                    results.add(null);
+                    continue;
+                }
+
+                List<String> matched = new ArrayList<>();
+                for (String name : names) if (matcher.matches(fileName(name))) matched.add(name);
+                results.add(executor.submit(() -> readClasses(source, matched)));
+            }
+
+            // classes are loaded on this thread, in classpath order
+            for (int i = 0; i < sources.size(); i++) {
+                File source = sources.get(i);
+                List<String> classes = indexed.get(i);
+                if (classes == null) {
+                    classes = getScan(source, results.get(i));
+                    if (classes == null) continue;
+                    if (query != null && source.isFile()) Index.put(query, source, classes);
+                }
+                for (String classname : classes) addClass(classname);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        if (useIndex) Index.save();
+    }
+
+    private static List<String> getScan(File source, Future<List<String>> future) throws InterruptedException {
+        if (future == null) return null;
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            CodeChickenCorePlugin.logger.error(
+                    "Failed to scan " + source.getAbsolutePath() + ", the zip file is invalid",
+                    e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @return The index key for this search, or null if the matcher has none
+     */
+    private String queryKey() {
+        String matcherKey = matcher.indexKey();
+        if (matcherKey == null) return null;
+
+        StringBuilder sb = new StringBuilder(matcherKey);
+        // anonymous matchers may be renumbered when the mod defining them changes
+        File matcherSource = sourceOf(matcher.getClass());
+        if (matcherSource != null)
+            sb.append('@').append(matcherSource.length()).append(':').append(matcherSource.lastModified());
+        for (String superclass : superclasses) sb.append(';').append(superclass);
+        return sb.toString();
     }
 
-    private void readFromZipFile(File file) throws IOException {
-        try (ZipFile zipFile = new ZipFile(file)) {
+    private static File sourceOf(Class<?> c) {
+        try {
+            CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+            return codeSource == null ? null : new File(codeSource.getLocation().toURI());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String fileName(String path) {
+        return path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1);
+    }
+
+    /**
+     * @return The paths of the files in a jar or directory
+     */
+    private static List<String> listSource(File source) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (source.isDirectory()) {
+            listDirectory(source, source, names);
+            return names;
+        }
+
+        try (ZipFile zipFile = new ZipFile(source)) {
             Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
             while (zipEntries.hasMoreElements()) {
                 ZipEntry zipentry = zipEntries.nextElement();
-                String fullname = zipentry.getName().replace('\\', '/');
-                int pos = fullname.lastIndexOf('/');
-                String name = pos == -1 ? fullname : fullname.substring(pos + 1);
-                if (!zipentry.isDirectory() && matcher.matches(name)) {
-                    checkAddClass(fullname);
-                }
+                if (!zipentry.isDirectory()) names.add(zipentry.getName());
             }
         }
+        return names;
     }
 
-    private void readFromDirectory(File directory, File basedirectory) {
+    private static void listDirectory(File directory, File basedirectory, List<String> names) {
         for (File child : directory.listFiles()) {
-            if (child.isDirectory()) {
-                readFromDirectory(child, basedirectory);
-            } else if (child.isFile() && matcher.matches(child.getName())) {
-                String fullname = CommonUtils.getRelativePath(basedirectory, child);
-                checkAddClass(fullname);
+            if (child.isDirectory()) listDirectory(child, basedirectory, names);
+            else if (child.isFile())
+                names.add(CommonUtils.getRelativePath(basedirectory, child).replace(File.separatorChar, '/'));
+        }
+    }
+
+    /**
+     * @return The names of the classes at the given paths in a jar or directory that extend the superclasses
+     */
+    private List<String> readClasses(File source, List<String> names) throws IOException {
+        List<String> found = new ArrayList<>();
+        if (names.isEmpty()) return found;
+
+        if (source.isDirectory()) {
+            for (String name : names) {
+                byte[] bytes;
+                try (InputStream in = new FileInputStream(new File(source, name))) {
+                    bytes = ByteStreams.toByteArray(in);
+                }
+                if (matchesSuperclasses(bytes)) found.add(toClassName(name));
+            }
+            return found;
+        }
+
+        try (ZipFile zipFile = new ZipFile(source)) {
+            for (String name : names) {
+                ZipEntry zipentry = zipFile.getEntry(name);
+                if (zipentry == null) continue;
+                byte[] bytes;
+                try (InputStream in = zipFile.getInputStream(zipentry)) {
+                    bytes = ByteStreams.toByteArray(in);
+                }
+                if (matchesSuperclasses(bytes)) found.add(toClassName(name));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The classes found in each jar for each query, stored in cache/CodeChickenCore/ClassDiscoverer.dat. Entries not
+     * used during a launch are left out of the file.
+     */
+    private static class Index {
+
+        private static final int VERSION = 3;
+
+        private static class Entry {
+
+            public final long length;
+            public final long lastModified;
+            public final List<String> classes;
+
+            public Entry(long length, long lastModified, List<String> classes) {
+                this.length = length;
+                this.lastModified = lastModified;
+                this.classes = classes;
+            }
+        }
+
+        private static Map<String, Entry> entries;
+        private static final Set<String> used = new HashSet<>();
+        // the keys in the file, unused entries are kept in memory for queries later in the launch
+        private static Set<String> saved = new HashSet<>();
+        private static boolean dirty;
+
+        private static File file() {
+            return new File(CodeChickenCorePlugin.minecraftDir, "cache/CodeChickenCore/ClassDiscoverer.dat");
+        }
+
+        private static String key(String query, File jar) {
+            return query + '|' + jar.getAbsolutePath();
+        }
+
+        public static synchronized List<String> get(String query, File jar) {
+            if (entries == null) load();
+
+            String key = key(query, jar);
+            used.add(key);
+            Entry entry = entries.get(key);
+            if (entry == null || entry.length != jar.length() || entry.lastModified != jar.lastModified())
+                return null;
+            return new ArrayList<>(entry.classes);
+        }
+
+        public static synchronized void put(String query, File jar, List<String> classes) {
+            if (entries == null) load();
+
+            String key = key(query, jar);
+            used.add(key);
+            entries.put(key, new Entry(jar.length(), jar.lastModified(), new ArrayList<>(classes)));
+            dirty = true;
+        }
+
+        private static void load() {
+            entries = new HashMap<>();
+            File file = file();
+            if (!file.exists()) return;
+
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != VERSION) return;
+
+                for (int n = in.readInt(); n > 0; n--) {
+                    String key = in.readUTF();
+                    long length = in.readLong();
+                    long lastModified = in.readLong();
+                    int count = in.readInt();
+                    List<String> classes = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) classes.add(in.readUTF());
+                    entries.put(key, new Entry(length, lastModified, classes));
+                }
+                saved = new HashSet<>(entries.keySet());
+            } catch (IOException e) {
+                CodeChickenCorePlugin.logger.error("Failed to read class discovery index, rescanning", e);
+                entries.clear();
+            }
+        }
+
+        public static synchronized void save() {
+            if (entries == null) return;
+            Set<String> keys = new HashSet<>(entries.keySet());
+            keys.retainAll(used);
+            if (!dirty && keys.equals(saved)) return;
+            dirty = false;
+
+            File file = file();
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                if (!file.getParentFile().exists()) file.getParentFile().mkdirs();
+                try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                    out.writeInt(VERSION);
+                    out.writeInt(keys.size());
+                    for (String key : keys) {
+                        Entry e = entries.get(key);
+                        out.writeUTF(key);
+                        out.writeLong(e.length);
+                        out.writeLong(e.lastModified);
+                        out.writeInt(e.classes.size());
+                        for (String s : e.classes) out.writeUTF(s);
+                    }
+                }
+                if (file.exists() && !file.delete()) throw new IOException("Could not replace " + file);
+                if (!tmp.renameTo(file)) throw new IOException("Could not rename " + tmp);
+                saved = keys;
+            } catch (IOException e) {
+                CodeChickenCorePlugin.logger.error("Failed to write class discovery index", e);
             }
         }
     }
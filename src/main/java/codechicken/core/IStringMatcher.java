@@ -1,6 +1,22 @@
 package codechicken.core;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
 public interface IStringMatcher {
 
     public boolean matches(String test);
+
+    /**
+     * Identifies the names this matcher accepts, so {@link ClassDiscoverer} can remember its results between launches.
+     * Matchers accepting the same names must return the same key every launch, or null to be rescanned every launch.
+     * Defaults to the class name for classes without instance fields, and null for lambdas and classes with fields.
+     */
+    public default String indexKey() {
+        Class<?> c = getClass();
+        if (c.isSynthetic()) return null;
+        for (; c != Object.class; c = c.getSuperclass())
+            for (Field f : c.getDeclaredFields()) if (!Modifier.isStatic(f.getModifiers())) return null;
+        return getClass().getName();
+    }
 }
@@ -14,11 +14,14 @@ import codechicken.core.featurehack.LiquidTextures;
 import codechicken.core.internal.CCCEventHandler;
 import codechicken.core.launch.CodeChickenCorePlugin;
 import codechicken.lib.config.ConfigFile;
+import codechicken.lib.packet.PacketBatcher;
+import codechicken.lib.world.ChunkWatcherIndex;
 import cpw.mods.fml.common.DummyModContainer;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.LoadController;
 import cpw.mods.fml.common.ModMetadata;
 import cpw.mods.fml.common.event.FMLInitializationEvent;
+import cpw.mods.fml.common.event.FMLLoadCompleteEvent;
 import cpw.mods.fml.common.event.FMLPreInitializationEvent;
 import cpw.mods.fml.common.versioning.ArtifactVersion;
 import cpw.mods.fml.common.versioning.VersionParser;
@@ -31,7 +34,7 @@ public class CodeChickenCoreModContainer extends DummyModContainer {
     public static void loadConfig() {
         if (config == null)
             config = new ConfigFile(new File(CodeChickenCorePlugin.minecraftDir, "config/CodeChickenCore.cfg"))
-                    .setComment("CodeChickenCore configuration file.");
+                    .setComment("CodeChickenCore configuration file.").setWriteBehind(true);
     }
 
     public CodeChickenCoreModContainer() {
@@ -73,6 +76,8 @@ public class CodeChickenCoreModContainer extends DummyModContainer {
 
     @Subscribe
     public void init(FMLInitializationEvent event) {
+        PacketBatcher.init();
+        ChunkWatcherIndex.init();
         if (event.getSide().isClient()) {
             ClientUtils.enhanceSupportersList("CodeChickenCore");
 
@@ -81,6 +86,11 @@ public class CodeChickenCoreModContainer extends DummyModContainer {
         }
     }
 
+    @Subscribe
+    public void loadComplete(FMLLoadCompleteEvent event) {
+        CombinedTransformer.loadComplete();
+    }
+
     @Override
     public VersionRange acceptableMinecraftVersionRange() {
         return VersionParser.parseRange(CodeChickenCorePlugin.mcVersion);
@@ -0,0 +1,201 @@
+package codechicken.core.asm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.minecraft.launchwrapper.IClassTransformer;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.ClassNode;
+
+import codechicken.core.launch.CodeChickenCorePlugin;
+import codechicken.lib.asm.ASMHelper;
+import codechicken.lib.asm.ClassHeirachyManager;
+import codechicken.lib.asm.INodeTransformer;
+import codechicken.lib.asm.RedirectorTransformer;
+
+/**
+ * Runs the CodeChickenCore transformers in order as a single class transformer. Each node transformer first screens
+ * the unparsed class, and consecutive node transformers that accept it share one ClassNode, so a class is parsed and
+ * written at most once between byte transformers. With no delegated transformers that is at most once overall.
+ * <p>
+ * The time spent in each transformer is recorded and logged by {@link #loadComplete()}. If enabled in the config,
+ * the output for each class is kept in a {@link TransformerCache} and reused on later launches.
+ */
+public class CombinedTransformer implements IClassTransformer {
+
+    private static class Stage {
+
+        public final String name;
+        public final INodeTransformer node;
+        public final IClassTransformer raw;
+        public final AtomicLong screenTime = new AtomicLong();
+        public final AtomicLong transformTime = new AtomicLong();
+        public final AtomicLong transformed = new AtomicLong();
+
+        public Stage(String name, INodeTransformer node, IClassTransformer raw) {
+            this.name = name;
+            this.node = node;
+            this.raw = raw;
+        }
+
+        public boolean skip() {
+            return raw instanceof DelegatedTransformer && !DelegatedTransformer.hasTransformers();
+        }
+    }
+
+    private static CombinedTransformer instance;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final TransformerCache cache;
+    private final AtomicLong cacheTime = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong parseTime = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong writeTime = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    public CombinedTransformer() {
+        instance = this;
+        CodeChickenCoreModContainer.loadConfig();
+        if (CodeChickenCoreModContainer.config.getTag("transformerCache").setComment(
+                "If set to true, classes transformed by CodeChickenCore are cached in cache/CodeChickenCore/transformed and reused until mods or configs change")
+                .getBooleanValue(false)) {
+            CodeChickenCoreModContainer.config.flush(); // the config is part of the cache fingerprint
+            cache = TransformerCache.open();
+        } else cache = null;
+
+        raw("ClassHeirachyManager", new ClassHeirachyManager());
+        node("TweakTransformer", TweakTransformer.nodeTransformer());
+        raw("DelegatedTransformer", new DelegatedTransformer());
+        node("DefaultImplementationTransformer", new DefaultImplementationTransformer());
+
+        RedirectorTransformer redirector = new RedirectorTransformer();
+        if (RedirectorTransformer.dumpClasses()) raw("RedirectorTransformer", redirector);
+        else node("RedirectorTransformer", redirector);
+    }
+
+    private void raw(String name, IClassTransformer transformer) {
+        stages.add(new Stage(name, null, transformer));
+    }
+
+    private void node(String name, INodeTransformer transformer) {
+        stages.add(new Stage(name, transformer, null));
+    }
+
+    @Override
+    public byte[] transform(String name, String transformedName, byte[] bytes) {
+        if (bytes == null) return null;
+        if (cache == null) return transformStages(name, transformedName, bytes);
+
+        long start = System.nanoTime();
+        byte[] output = cache.get(name, bytes);
+        cacheTime.addAndGet(System.nanoTime() - start);
+        if (output != null) {
+            cacheHits.incrementAndGet();
+            return output;
+        }
+
+        output = transformStages(name, transformedName, bytes);
+        start = System.nanoTime();
+        cache.put(name, bytes, output);
+        cacheTime.addAndGet(System.nanoTime() - start);
+        return output;
+    }
+
+    private byte[] transformStages(String name, String transformedName, byte[] bytes) {
+        List<Stage> accepted = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size();) {
+            Stage stage = stages.get(i);
+            if (stage.raw != null) {
+                if (!stage.skip()) {
+                    long start = System.nanoTime();
+                    bytes = stage.raw.transform(name, transformedName, bytes);
+                    stage.transformTime.addAndGet(System.nanoTime() - start);
+                    stage.transformed.incrementAndGet();
+                }
+                i++;
+                continue;
+            }
+
+            // screen the run of node transformers up to the next byte transformer
+            accepted.clear();
+            int readFlags = 0;
+            for (; i < stages.size() && stages.get(i).node != null; i++) {
+                stage = stages.get(i);
+                long start = System.nanoTime();
+                boolean accepts = stage.node.accepts(name, transformedName, bytes);
+                stage.screenTime.addAndGet(System.nanoTime() - start);
+                if (accepts) {
+                    accepted.add(stage);
+                    readFlags |= stage.node.readFlags(name);
+                }
+            }
+            if (!accepted.isEmpty()) bytes = transform(name, transformedName, bytes, accepted, readFlags);
+        }
+        return bytes;
+    }
+
+    private byte[] transform(String name, String transformedName, byte[] bytes, List<Stage> accepted, int readFlags) {
+        long start = System.nanoTime();
+        ClassNode cnode = new ClassNode();
+        ClassVisitor cv = cnode;
+        for (int i = accepted.size() - 1; i >= 0; i--) cv = accepted.get(i).node.reader(name, cv);
+        new ClassReader(bytes).accept(cv, readFlags);
+        parseTime.addAndGet(System.nanoTime() - start);
+        parsed.incrementAndGet();
+
+        boolean changed = false;
+        int writeFlags = 0;
+        for (Stage stage : accepted) {
+            start = System.nanoTime();
+            if (stage.node.transform(name, transformedName, cnode)) {
+                changed = true;
+                writeFlags |= stage.node.writeFlags(name);
+            }
+            stage.transformTime.addAndGet(System.nanoTime() - start);
+            stage.transformed.incrementAndGet();
+        }
+        if (!changed) return bytes;
+
+        start = System.nanoTime();
+        bytes = ASMHelper.createBytes(cnode, writeFlags);
+        writeTime.addAndGet(System.nanoTime() - start);
+        written.incrementAndGet();
+        return bytes;
+    }
+
+    /**
+     * Writes out the transformed class cache and logs the time spent screening and transforming classes in each
+     * transformer, and parsing and writing them
+     */
+    public static void loadComplete() {
+        if (instance == null) return;
+
+        if (instance.cache != null) {
+            instance.cache.flush();
+            CodeChickenCorePlugin.logger.info(
+                    String.format(
+                            "Transformer cache: %d hits, %.1f ms",
+                            instance.cacheHits.get(),
+                            instance.cacheTime.get() / 1e6));
+        }
+
+        for (Stage stage : instance.stages) CodeChickenCorePlugin.logger.info(
+                String.format(
+                        "%s: screened in %.1f ms, %d transformed in %.1f ms",
+                        stage.name,
+                        stage.screenTime.get() / 1e6,
+                        stage.transformed.get(),
+                        stage.transformTime.get() / 1e6));
+        CodeChickenCorePlugin.logger.info(
+                String.format(
+                        "Classes: %d parsed in %.1f ms, %d written in %.1f ms",
+                        instance.parsed.get(),
+                        instance.parseTime.get() / 1e6,
+                        instance.written.get(),
+                        instance.writeTime.get() / 1e6));
+    }
+}
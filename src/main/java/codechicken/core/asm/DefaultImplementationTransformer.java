@@ -13,10 +13,12 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import codechicken.lib.asm.ASMHelper;
+import codechicken.lib.asm.ClassHeader;
 import codechicken.lib.asm.ClassHeirachyManager;
+import codechicken.lib.asm.INodeTransformer;
 import codechicken.lib.asm.ObfMapping;
 
-public class DefaultImplementationTransformer implements IClassTransformer {
+public class DefaultImplementationTransformer implements IClassTransformer, INodeTransformer {
 
     private static LaunchClassLoader cl = (LaunchClassLoader) ClassHeirachyManager.class.getClassLoader();
 
@@ -79,15 +81,30 @@ public class DefaultImplementationTransformer implements IClassTransformer {
 
     @Override
     public byte[] transform(String name, String transformedName, byte[] bytes) {
-        if (transformedName.startsWith("net.minecraft") || impls.isEmpty()) return bytes;
+        if (!accepts(name, transformedName, bytes)) return bytes;
 
         ClassNode cnode = ASMHelper.createClassNode(bytes);
+        return transform(name, transformedName, cnode) ? ASMHelper.createBytes(cnode, 0) : bytes;
+    }
+
+    @Override
+    public boolean accepts(String name, String transformedName, byte[] bytes) {
+        if (transformedName.startsWith("net.minecraft") || impls.isEmpty()) return false;
+
+        ClassHeader header = ClassHeader.read(bytes);
+        if (header == null) return false;
+
+        for (String iname : header.interfaces) if (impls.containsKey(iname)) return true;
+        return false;
+    }
+
+    @Override
+    public boolean transform(String name, String transformedName, ClassNode cnode) {
         boolean changed = false;
         for (String iname : cnode.interfaces) {
             InterfaceImpl impl = impls.get(iname);
             if (impl != null) changed |= impl.patch(cnode);
         }
-
-        return changed ? ASMHelper.createBytes(cnode, 0) : bytes;
+        return changed;
     }
 }
@@ -47,6 +47,10 @@ public class DelegatedTransformer implements IClassTransformer {
         return bytes;
     }
 
+    public static boolean hasTransformers() {
+        return delegatedTransformers != null && !delegatedTransformers.isEmpty();
+    }
+
     public static void addTransformer(String transformer, JarFile jar, File jarFile) {
         logger.debug("Adding CCTransformer: " + transformer);
         try {
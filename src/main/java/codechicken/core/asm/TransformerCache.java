@@ -0,0 +1,300 @@
+package codechicken.core.asm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.minecraft.launchwrapper.Launch;
+
+import codechicken.core.launch.CodeChickenCorePlugin;
+
+/**
+ * Stores the output of {@link CombinedTransformer} on disk, keyed by the class name and a hash of its input bytes, so
+ * unchanged classes are not transformed again on the next launch. The cache is cleared whenever the fingerprint of the
+ * classpath, the mods directory or the CodeChicken config files changes, as those determine the registered transforms.
+ * <p>
+ * Entries are appended to classes.dat as they are made. classes.idx is an open addressed table of key, offset and
+ * length, memory mapped for lookups. It is rebuilt on startup when classes.dat has grown since it was written, so the
+ * index is never written while mapped.
+ */
+public class TransformerCache {
+
+    private static final int VERSION = 1;
+    private static final int SLOT = 20; // key, offset, length
+    private static final int INDEX_HEADER = 24; // version, fingerprint, data length, capacity
+    private static final int DATA_HEADER = 12; // version, fingerprint
+    private static final long MAX_SIZE = 512 << 20;
+
+    private final File dir;
+    private MappedByteBuffer index;
+    private MappedByteBuffer data;
+    private int capacity;
+    private DataOutputStream out;
+    private long outLength;
+
+    private TransformerCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return The cache in minecraftDir/cache/CodeChickenCore/transformed, or null if it could not be opened
+     */
+    public static TransformerCache open() {
+        TransformerCache cache = new TransformerCache(
+                new File(CodeChickenCorePlugin.minecraftDir, "cache/CodeChickenCore/transformed"));
+        try {
+            cache.load(fingerprint());
+            Runtime.getRuntime().addShutdownHook(new Thread(cache::flush, "CCC Transformer Cache"));
+            return cache;
+        } catch (IOException e) {
+            CodeChickenCorePlugin.logger.error("Failed to open transformed class cache", e);
+            return null;
+        }
+    }
+
+    private void load(long fingerprint) throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        File dataFile = new File(dir, "classes.dat");
+        File indexFile = new File(dir, "classes.idx");
+
+        if (!readHeader(dataFile, fingerprint) || dataFile.length() > MAX_SIZE) {
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(dataFile))) {
+                header.writeInt(VERSION);
+                header.writeLong(fingerprint);
+            }
+            indexFile.delete();
+        }
+
+        if (indexedLength(indexFile, fingerprint) != dataFile.length()) rebuildIndex(indexFile, dataFile, fingerprint);
+        long dataLength = dataFile.length();
+
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+            index = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        capacity = index.getInt(INDEX_HEADER - 4);
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+            data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile, true)));
+        outLength = dataLength;
+    }
+
+    private static boolean readHeader(File dataFile, long fingerprint) throws IOException {
+        if (dataFile.length() < DATA_HEADER) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(dataFile))) {
+            return in.readInt() == VERSION && in.readLong() == fingerprint;
+        }
+    }
+
+    /**
+     * @return The length of classes.dat the index was built from, or -1 if it is missing or stale
+     */
+    private static long indexedLength(File indexFile, long fingerprint) throws IOException {
+        if (indexFile.length() < INDEX_HEADER) return -1;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(indexFile))) {
+            if (in.readInt() != VERSION || in.readLong() != fingerprint) return -1;
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Scans the records in classes.dat and writes a new index for them
+     */
+    private static void rebuildIndex(File indexFile, File dataFile, long fingerprint) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        long length = DATA_HEADER, fileLength = dataFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
+            in.skipBytes(DATA_HEADER);
+            while (true) {
+                long key;
+                int size;
+                try {
+                    key = in.readLong();
+                    size = in.readInt();
+                    // skip may pass the end of the file
+                    if (size < 0 || length + 12 + size > fileLength || in.skipBytes(size) != size) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                entries.add(new long[] { key, length, 12 + size });
+                length += 12 + size;
+            }
+        }
+        // drop a record cut off by a crash, the next append starts after the last whole one
+        if (length != fileLength) try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            raf.setLength(length);
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(entries.size(), 512) * 2) << 1;
+        ByteBuffer table = ByteBuffer.allocate(INDEX_HEADER + capacity * SLOT);
+        table.putInt(VERSION).putLong(fingerprint).putLong(length).putInt(capacity);
+        for (long[] e : entries) {
+            int slot = slot(e[0], capacity);
+            while (table.getLong(INDEX_HEADER + slot * SLOT) != 0) slot = slot + 1 & capacity - 1;
+            int pos = INDEX_HEADER + slot * SLOT;
+            table.putLong(pos, e[0]).putLong(pos + 8, e[1]).putInt(pos + 16, (int) e[2]);
+        }
+
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        Files.write(tmp.toPath(), table.array());
+        if (indexFile.exists() && !indexFile.delete()) throw new IOException("Could not replace " + indexFile);
+        if (!tmp.renameTo(indexFile)) throw new IOException("Could not rename " + tmp);
+    }
+
+    private static int slot(long key, int capacity) {
+        return (int) (key ^ key >>> 32) & capacity - 1;
+    }
+
+    /**
+     * A record is the key, the size of the rest of the record, the class name, the input length and the output, which
+     * is empty if the class was not changed.
+     */
+    private static long key(String name, byte[] bytes) {
+        long h = hash(name.getBytes(StandardCharsets.UTF_8), 0x9E3779B97F4A7C15L);
+        h = hash(bytes, h);
+        return h == 0 ? 1 : h; // 0 marks an empty slot
+    }
+
+    private static long hash(byte[] b, long h) {
+        ByteBuffer buf = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        int i = 0;
+        for (; i + 8 <= b.length; i += 8) h = mix(h ^ buf.getLong(i));
+        for (; i < b.length; i++) h = mix(h ^ b[i] & 0xFF);
+        return mix(h ^ b.length);
+    }
+
+    private static long mix(long h) {
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ h >>> 29;
+    }
+
+    /**
+     * @return The cached output for the class, or null if there is none
+     */
+    public byte[] get(String name, byte[] bytes) {
+        long key = key(name, bytes);
+        for (int slot = slot(key, capacity);; slot = slot + 1 & capacity - 1) {
+            int pos = INDEX_HEADER + slot * SLOT;
+            long k = index.getLong(pos);
+            if (k == 0) return null;
+            if (k == key) {
+                byte[] output = read(index.getLong(pos + 8), name, bytes);
+                if (output != null) return output;
+            }
+        }
+    }
+
+    private byte[] read(long offset, String name, byte[] input) {
+        ByteBuffer buf = data.duplicate();
+        buf.position((int) offset + 12);
+        byte[] nameBytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(nameBytes);
+        if (buf.getInt() != input.length || !name.equals(new String(nameBytes, StandardCharsets.UTF_8))) return null;
+
+        int length = buf.getInt();
+        if (length < 0) return input;
+
+        byte[] output = new byte[length];
+        buf.get(output);
+        return output;
+    }
+
+    /**
+     * Records the output of transforming a class, which may be the input itself if it was not changed
+     */
+    public synchronized void put(String name, byte[] input, byte[] output) {
+        if (out == null) return;
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = output == input || Arrays.equals(input, output) ? -1 : output.length;
+        int size = 2 + nameBytes.length + 8 + Math.max(length, 0);
+        try {
+            out.writeLong(key(name, input));
+            out.writeInt(size);
+            out.writeShort(nameBytes.length);
+            out.write(nameBytes);
+            out.writeInt(input.length);
+            out.writeInt(length);
+            if (length >= 0) out.write(output);
+            outLength += 12 + size;
+            if (outLength > MAX_SIZE) close();
+        } catch (IOException e) {
+            CodeChickenCorePlugin.logger.error("Failed to write transformed class cache", e);
+            close();
+        }
+    }
+
+    /**
+     * Writes out buffered entries
+     */
+    public synchronized void flush() {
+        if (out == null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            CodeChickenCorePlugin.logger.error("Failed to write transformed class cache", e);
+            close();
+        }
+    }
+
+    private void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        out = null;
+    }
+
+    /**
+     * Everything that may change which classes are transformed, or how
+     */
+    private static long fingerprint() throws IOException {
+        StringBuilder sb = new StringBuilder(Tags.VERSION).append('\n');
+        for (URL url : Launch.classLoader.getSources()) {
+            sb.append(url).append('\n');
+            if ("file".equals(url.getProtocol())) try {
+                fingerprint(new File(url.toURI()), sb);
+            } catch (URISyntaxException ignored) {}
+        }
+        fingerprint(new File(CodeChickenCorePlugin.minecraftDir, "mods"), sb);
+
+        long h = hash(sb.toString().getBytes(StandardCharsets.UTF_8), 0);
+        for (String config : new String[] { "config/CodeChickenCore.cfg", "config/CodeChickenLib.cfg" }) {
+            File file = new File(CodeChickenCorePlugin.minecraftDir, config);
+            if (file.exists()) h = hash(Files.readAllBytes(file.toPath()), h);
+        }
+        return h;
+    }
+
+    private static void fingerprint(File file, StringBuilder sb) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) return;
+            Arrays.sort(files);
+            for (File child : files) fingerprint(child, sb);
+        } else if (file.exists()) {
+            sb.append(file.getPath()).append(':').append(file.length()).append(':').append(file.lastModified())
+                    .append('\n');
+        }
+    }
+}
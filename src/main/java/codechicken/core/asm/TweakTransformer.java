@@ -14,6 +14,7 @@ import org.objectweb.asm.tree.MethodNode;
 import codechicken.lib.asm.ASMBlock;
 import codechicken.lib.asm.ASMInit;
 import codechicken.lib.asm.ASMReader;
+import codechicken.lib.asm.INodeTransformer;
 import codechicken.lib.asm.ModularASMTransformer;
 import codechicken.lib.asm.ModularASMTransformer.MethodReplacer;
 import codechicken.lib.asm.ModularASMTransformer.MethodTransformer;
@@ -106,4 +107,8 @@ public class TweakTransformer implements IClassTransformer, Opcodes {
     public byte[] transform(String name, String tname, byte[] bytes) {
         return transformer.transform(name, bytes);
     }
+
+    public static INodeTransformer nodeTransformer() {
+        return transformer;
+    }
 }
@@ -1,5 +1,7 @@
 package codechicken.core.featurehack.mc;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import net.minecraft.util.MathHelper;
 
 import codechicken.lib.colour.ColourRGBA;
@@ -71,7 +73,7 @@ public class TextureLavaFX extends TextureFX {
 
                 this.field_76877_j[var1 + var2 * tileSizeBase] -= 0.06F;
 
-                if (Math.random() < 0.005D) {
+                if (ThreadLocalRandom.current().nextDouble() < 0.005D) {
                     this.field_76877_j[var1 + var2 * tileSizeBase] = 1.5F;
                 }
             }
@@ -108,4 +110,9 @@ public class TextureLavaFX extends TextureFX {
             imageData[var2] = new ColourRGBA(var5, var6, var7, -1).argb();
         }
     }
+
+    @Override
+    public boolean tickInParallel() {
+        return true;
+    }
 }
@@ -1,5 +1,7 @@
 package codechicken.core.featurehack.mc;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import net.minecraft.util.MathHelper;
 
 import codechicken.lib.colour.ColourRGBA;
@@ -79,7 +81,7 @@ public class TextureLavaFlowFX extends TextureFX {
 
                 this.field_76872_j[var1 + var2 * tileSizeBase] -= 0.06F;
 
-                if (Math.random() < 0.005D) {
+                if (ThreadLocalRandom.current().nextDouble() < 0.005D) {
                     this.field_76872_j[var1 + var2 * tileSizeBase] = 1.5F;
                 }
             }
@@ -125,4 +127,9 @@ public class TextureLavaFlowFX extends TextureFX {
     private void writeColour(int px, int py, int var5, int var6, int var7, int var8) {
         imageData[py * 32 + px] = new ColourRGBA(var5, var6, var7, var8).argb();
     }
+
+    @Override
+    public boolean tickInParallel() {
+        return true;
+    }
 }
@@ -1,5 +1,7 @@
 package codechicken.core.featurehack.mc;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import codechicken.lib.colour.ColourRGBA;
 import codechicken.lib.render.TextureFX;
 import cpw.mods.fml.relauncher.Side;
@@ -65,7 +67,7 @@ public class TextureWaterFX extends TextureFX {
 
                 this.alpha[var1 + var2 * tileSizeBase] -= 0.1F;
 
-                if (Math.random() < 0.05D) {
+                if (ThreadLocalRandom.current().nextDouble() < 0.05D) {
                     this.alpha[var1 + var2 * tileSizeBase] = 0.5F;
                 }
             }
@@ -104,4 +106,9 @@ public class TextureWaterFX extends TextureFX {
             imageData[var2] = new ColourRGBA(var5, var6, var7, var8).argb();
         }
     }
+
+    @Override
+    public boolean tickInParallel() {
+        return true;
+    }
 }
@@ -1,5 +1,7 @@
 package codechicken.core.featurehack.mc;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 import codechicken.lib.colour.ColourRGBA;
 import codechicken.lib.render.TextureFX;
 import cpw.mods.fml.relauncher.Side;
@@ -68,7 +70,7 @@ public class TextureWaterFlowFX extends TextureFX {
 
                 this.field_76881_j[var1 + var2 * tileSizeBase] -= 0.3F;
 
-                if (Math.random() < 0.2D) {
+                if (ThreadLocalRandom.current().nextDouble() < 0.2D) {
                     this.field_76881_j[var1 + var2 * tileSizeBase] = 0.5F;
                 }
             }
@@ -116,4 +118,9 @@ public class TextureWaterFlowFX extends TextureFX {
     private void writeColour(int px, int py, int var5, int var6, int var7, int var8) {
         imageData[py * 32 + px] = new ColourRGBA(var5, var6, var7, var8).argb();
     }
+
+    @Override
+    public boolean tickInParallel() {
+        return true;
+    }
 }
@@ -0,0 +1,118 @@
+package codechicken.lib.asm;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The access flags, name, superclass and interfaces of a class, read by skipping over the constant pool instead of
+ * parsing the whole class. Works for any class file version.
+ */
+public class ClassHeader {
+
+    private static final int UTF8 = 1;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int HANDLE = 15;
+
+    public final int access;
+    public final String name;
+    /**
+     * null for java/lang/Object and module-info
+     */
+    public final String superName;
+    public final String[] interfaces;
+
+    private ClassHeader(int access, String name, String superName, String[] interfaces) {
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    /**
+     * @return The header of the class in bytes, or null if bytes is not a valid class file
+     */
+    public static ClassHeader read(byte[] bytes) {
+        try {
+            return parse(bytes);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static ClassHeader parse(byte[] b) {
+        if (b == null || b.length < 10 || readInt(0, b) != 0xCAFEBABE) return null;
+
+        // record the offset of each constant, Class entries are resolved lazily through their Utf8 index
+        int n = readUnsignedShort(8, b);
+        int[] offsets = new int[n];
+        int index = 10;
+        for (int i = 1; i < n; ++i) {
+            offsets[i] = index;
+            switch (b[index]) {
+                case UTF8 -> index += 3 + readUnsignedShort(index + 1, b);
+                case LONG, DOUBLE -> {
+                    index += 9;
+                    ++i;
+                }
+                case HANDLE -> index += 4;
+                case CLASS, 8, 16, 19, 20 -> index += 3;
+                default -> index += 5;
+            }
+        }
+
+        int access = readUnsignedShort(index, b);
+        String name = readClass(readUnsignedShort(index + 2, b), offsets, b);
+        String superName = readClass(readUnsignedShort(index + 4, b), offsets, b);
+        String[] interfaces = new String[readUnsignedShort(index + 6, b)];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = readClass(readUnsignedShort(index + 8 + i * 2, b), offsets, b);
+
+        return new ClassHeader(access, name, superName, interfaces);
+    }
+
+    private static String readClass(int cpIndex, int[] offsets, byte[] b) {
+        if (cpIndex == 0) return null;
+        return readUtf8(offsets[readUnsignedShort(offsets[cpIndex] + 1, b)], b);
+    }
+
+    /**
+     * Decodes a constant pool Utf8 entry (modified UTF-8)
+     */
+    private static String readUtf8(int offset, byte[] b) {
+        int len = readUnsignedShort(offset + 1, b);
+        char[] chars = new char[len];
+        int count = 0;
+        for (int i = offset + 3, end = offset + 3 + len; i < end;) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) chars[count++] = (char) c;
+            else if (c < 0xE0) chars[count++] = (char) ((c & 0x1F) << 6 | b[i++] & 0x3F);
+            else {
+                chars[count++] = (char) ((c & 0xF) << 12 | (b[i] & 0x3F) << 6 | b[i + 1] & 0x3F);
+                i += 2;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static int readInt(int index, byte[] b) {
+        return (b[index] & 0xFF) << 24 | (b[index + 1] & 0xFF) << 16 | (b[index + 2] & 0xFF) << 8 | b[index + 3] & 0xFF;
+    }
+
+    private static int readUnsignedShort(int index, byte[] b) {
+        return (b[index] & 0xFF) << 8 | b[index + 1] & 0xFF;
+    }
+
+    public boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * @return true if type is the direct superclass or one of the directly implemented interfaces
+     */
+    public boolean extendsDirectly(String type) {
+        if (type.equals(superName)) return true;
+        for (String iface : interfaces) if (type.equals(iface)) return true;
+        return false;
+    }
+}
@@ -1,15 +1,16 @@
 package codechicken.lib.asm;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
 
-import org.objectweb.asm.tree.ClassNode;
-
 import cpw.mods.fml.common.asm.transformers.deobf.FMLDeobfuscatingRemapper;
 
 /**
@@ -25,29 +26,57 @@ public class ClassHeirachyManager implements IClassTransformer {
     public static class SuperCache {
 
         String superclass;
-        public HashSet<String> parents = new HashSet<String>();
-        private boolean flattened;
+        /**
+         * The direct superclass and interfaces
+         */
+        public Set<String> parents = new HashSet<String>();
+        /**
+         * The ids of all superclasses and interfaces, direct or indirect
+         */
+        private volatile BitSet ancestors;
 
         public void add(String parent) {
             parents.add(parent);
         }
 
         public void flatten() {
-            if (flattened) return;
+            if (ancestors != null) return;
 
-            for (String s : new ArrayList<String>(parents)) {
+            BitSet set = new BitSet();
+            for (String s : parents) {
+                set.set(id(s));
                 SuperCache c = declareClass(s);
                 if (c != null) {
                     c.flatten();
-                    parents.addAll(c.parents);
+                    set.or(c.ancestors);
                 }
             }
-            flattened = true;
+            ancestors = set;
+        }
+
+        /**
+         * @return true if name is a superclass or interface of this class, directly or indirectly
+         */
+        public boolean extendsClass(String name) {
+            flatten();
+            Integer id = ids.get(name);
+            return id != null && ancestors.get(id);
         }
     }
 
-    public static HashMap<String, SuperCache> superclasses = new HashMap<String, SuperCache>();
+    public static Map<String, SuperCache> superclasses = new ConcurrentHashMap<String, SuperCache>();
     private static LaunchClassLoader cl = Launch.classLoader;
+    /**
+     * Small ids for class names, so sets of ancestors can be bitsets. Names common to many classes, like
+     * java.lang.Object, get low ids as they are seen first.
+     */
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private static int id(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : ids.computeIfAbsent(name, k -> nextId.getAndIncrement());
+    }
 
     public static String toKey(String name) {
         if (ObfMapping.obfuscated)
@@ -76,8 +105,7 @@ public class ClassHeirachyManager implements IClassTransformer {
         if (cache == null) // just can't handle this
             return false;
 
-        cache.flatten();
-        return cache.parents.contains(superclass);
+        return cache.extendsClass(superclass);
     }
 
     private static SuperCache declareClass(String name) {
@@ -103,27 +131,39 @@ public class ClassHeirachyManager implements IClassTransformer {
     private static SuperCache declareReflection(String name) throws ClassNotFoundException {
         Class<?> aclass = Class.forName(name);
 
-        SuperCache cache = getOrCreateCache(name);
+        SuperCache cache = new SuperCache();
         if (aclass.isInterface()) cache.superclass = "java.lang.Object";
-        else if (name.equals("java.lang.Object")) return cache;
-        else cache.superclass = toKey(aclass.getSuperclass().getName());
+        else if (!name.equals("java.lang.Object")) cache.superclass = toKey(aclass.getSuperclass().getName());
 
-        cache.add(cache.superclass);
+        if (cache.superclass != null) cache.add(cache.superclass);
         for (Class<?> iclass : aclass.getInterfaces()) cache.add(toKey(iclass.getName()));
 
-        return cache;
+        return declare(name, cache);
     }
 
+    /**
+     * Reads only the class header, skipping the constant pool rather than parsing the whole class
+     */
     private static SuperCache declareASM(byte[] bytes) {
-        ClassNode node = ASMHelper.createClassNode(bytes);
-        String name = toKey(node.name);
+        ClassHeader header = ClassHeader.read(bytes);
+        if (header == null) return null;
 
-        SuperCache cache = getOrCreateCache(name);
-        cache.superclass = toKey(node.superName.replace('/', '.'));
-        cache.add(cache.superclass);
-        for (String iclass : node.interfaces) cache.add(toKey(iclass.replace('/', '.')));
+        SuperCache cache = new SuperCache();
+        if (header.superName != null) {
+            cache.superclass = toKey(header.superName.replace('/', '.'));
+            cache.add(cache.superclass);
+        }
+        for (String iclass : header.interfaces) cache.add(toKey(iclass.replace('/', '.')));
 
-        return cache;
+        return declare(toKey(header.name.replace('/', '.')), cache);
+    }
+
+    /**
+     * Caches are only published once complete, so they can be read from other threads
+     */
+    private static SuperCache declare(String name, SuperCache cache) {
+        SuperCache prev = superclasses.putIfAbsent(name, cache);
+        return prev != null ? prev : cache;
     }
 
     @Override
@@ -136,9 +176,7 @@ public class ClassHeirachyManager implements IClassTransformer {
     }
 
     public static SuperCache getOrCreateCache(String name) {
-        SuperCache cache = superclasses.get(name);
-        if (cache == null) superclasses.put(name, cache = new SuperCache());
-        return cache;
+        return superclasses.computeIfAbsent(name, k -> new SuperCache());
     }
 
     public static String getSuperClass(String name, boolean runtime) {
@@ -146,7 +184,6 @@ public class ClassHeirachyManager implements IClassTransformer {
         SuperCache cache = declareClass(name);
         if (cache == null) return "java.lang.Object";
 
-        cache.flatten();
         String s = cache.superclass;
         if (!runtime) s = FMLDeobfuscatingRemapper.INSTANCE.unmap(s);
         return s;
@@ -0,0 +1,43 @@
+package codechicken.lib.asm;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A class transformer that works on a ClassNode, so several can share one parse of a class and one write.
+ */
+public interface INodeTransformer {
+
+    /**
+     * A quick check of the unparsed class, such as with a {@link ClassConstantPoolParser} or {@link ClassHeader}.
+     *
+     * @return false if {@link #transform} would not change the class
+     */
+    boolean accepts(String name, String transformedName, byte[] bytes);
+
+    /**
+     * @return The ClassReader flags this transformer needs the class parsed with
+     */
+    default int readFlags(String name) {
+        return 0;
+    }
+
+    /**
+     * Wraps the visitor the class is parsed into, for transformers that need to adjust the class as it is read
+     */
+    default ClassVisitor reader(String name, ClassVisitor cv) {
+        return cv;
+    }
+
+    /**
+     * @return true if cnode was changed
+     */
+    boolean transform(String name, String transformedName, ClassNode cnode);
+
+    /**
+     * @return The ClassWriter flags this transformer needs the class written with if it changed it
+     */
+    default int writeFlags(String name) {
+        return 0;
+    }
+}
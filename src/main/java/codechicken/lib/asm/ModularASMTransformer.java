@@ -20,7 +20,12 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.MethodNode;
 
-public class ModularASMTransformer {
+import codechicken.lib.config.ConfigTag;
+
+public class ModularASMTransformer implements INodeTransformer {
+
+    private static final ConfigTag.BooleanValue dumpASM = config == null ? null
+            : config.getTag("dump_asm").asBoolean(false);
 
     public static class ClassNodeTransformerList {
 
@@ -32,12 +37,37 @@ public class ModularASMTransformer {
             t.addMethodsToSort(methodsToSort);
         }
 
+        /**
+         * Wraps the visitor a class is read into to sort the locals of the methods the transformers need sorted
+         */
+        public ClassVisitor reader(ClassVisitor cv) {
+            return methodsToSort.isEmpty() ? cv : new LocalVariablesSorterVisitor(methodsToSort, cv);
+        }
+
+        public int writeFlags() {
+            int writeFlags = 0;
+            for (ClassNodeTransformer t : transformers) writeFlags |= t.writeFlags;
+            return writeFlags;
+        }
+
+        /**
+         * Transforms a class read through {@link #reader} with {@link ClassReader#EXPAND_FRAMES}
+         */
+        public void transform(ClassNode cnode) {
+            File file = new File("asm/ccl_modular/" + cnode.name.replace('/', '#') + ".txt");
+            try {
+                for (ClassNodeTransformer t : transformers) t.transform(cnode);
+                if (dumpASM != null && dumpASM.getAsBoolean()) dump(cnode::accept, file, false, false);
+            } catch (RuntimeException e) {
+                dump(cnode::accept, file, false, false);
+                throw e;
+            }
+        }
+
         public byte[] transform(byte[] bytes) {
             ClassNode cnode = new ClassNode();
             ClassReader reader = new ClassReader(bytes);
-            ClassVisitor cv = cnode;
-            if (!methodsToSort.isEmpty()) cv = new LocalVariablesSorterVisitor(methodsToSort, cv);
-            reader.accept(cv, ClassReader.EXPAND_FRAMES);
+            reader.accept(reader(cnode), ClassReader.EXPAND_FRAMES);
 
             try {
                 int writeFlags = 0;
@@ -47,7 +77,7 @@ public class ModularASMTransformer {
                 }
 
                 bytes = createBytes(cnode, writeFlags);
-                if (config.getTag("dump_asm").getBooleanValue(false))
+                if (dumpASM != null && dumpASM.getAsBoolean())
                     dump(bytes, new File("asm/ccl_modular/" + cnode.name.replace('/', '#') + ".txt"), false, false);
                 return bytes;
             } catch (RuntimeException e) {
@@ -289,4 +319,30 @@ public class ModularASMTransformer {
         ClassNodeTransformerList list = transformers.get(name);
         return list == null ? bytes : list.transform(bytes);
     }
+
+    @Override
+    public boolean accepts(String name, String transformedName, byte[] bytes) {
+        return transformers.containsKey(name);
+    }
+
+    @Override
+    public int readFlags(String name) {
+        return ClassReader.EXPAND_FRAMES;
+    }
+
+    @Override
+    public ClassVisitor reader(String name, ClassVisitor cv) {
+        return transformers.get(name).reader(cv);
+    }
+
+    @Override
+    public boolean transform(String name, String transformedName, ClassNode cnode) {
+        transformers.get(name).transform(cnode);
+        return true;
+    }
+
+    @Override
+    public int writeFlags(String name) {
+        return transformers.get(name).writeFlags();
+    }
 }
@@ -28,7 +28,7 @@ import org.objectweb.asm.util.TraceClassVisitor;
 
 import codechicken.core.launch.CodeChickenCorePlugin;
 
-public class RedirectorTransformer implements IClassTransformer, Opcodes {
+public class RedirectorTransformer implements IClassTransformer, INodeTransformer, Opcodes {
 
     private static final boolean DUMP_CLASSES = Boolean.parseBoolean(System.getProperty("ccl.dumpClass", "false"));
     private static final String RenderStateClass = "codechicken/lib/render/CCRenderState";
@@ -82,13 +82,46 @@ public class RedirectorTransformer implements IClassTransformer, Opcodes {
 
     @Override
     public byte[] transform(String name, String transformedName, byte[] basicClass) {
-        if (!cstPoolParser.find(basicClass)) {
+        if (!accepts(name, transformedName, basicClass)) {
             return basicClass;
         }
 
         final ClassReader cr = new ClassReader(basicClass);
         final ClassNode cn = new ClassNode();
         cr.accept(cn, 0);
+
+        if (transform(name, transformedName, cn)) {
+            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            cn.accept(cw);
+            final byte[] bytes = cw.toByteArray();
+            if (DUMP_CLASSES) {
+                saveTransformedClass(basicClass, transformedName + "_PRE");
+                saveTransformedClass(bytes, transformedName + "_POST");
+            }
+            return bytes;
+        }
+        return basicClass;
+    }
+
+    /**
+     * Classes are only dumped when transformed on their own, so with dumping on this must not share a ClassNode
+     */
+    public static boolean dumpClasses() {
+        return DUMP_CLASSES;
+    }
+
+    @Override
+    public boolean accepts(String name, String transformedName, byte[] bytes) {
+        return cstPoolParser.find(bytes);
+    }
+
+    @Override
+    public int writeFlags(String name) {
+        return ClassWriter.COMPUTE_MAXS;
+    }
+
+    @Override
+    public boolean transform(String name, String transformedName, ClassNode cn) {
         boolean changed = false;
 
         // spotless:off
@@ -141,17 +174,7 @@ public class RedirectorTransformer implements IClassTransformer, Opcodes {
         }
         // spotless:on
 
-        if (changed) {
-            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-            cn.accept(cw);
-            final byte[] bytes = cw.toByteArray();
-            if (DUMP_CLASSES) {
-                saveTransformedClass(basicClass, transformedName + "_PRE");
-                saveTransformedClass(bytes, transformedName + "_POST");
-            }
-            return bytes;
-        }
-        return basicClass;
+        return changed;
     }
 
     private File outputDir = null;
@@ -2,17 +2,159 @@ package codechicken.lib.config;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ConfigFile extends ConfigTagParent {
 
+    /**
+     * Writes files in write behind mode some time after they were last saved, and any still pending on shutdown
+     */
+    private static class WriteBehind {
+
+        private static final Set<ConfigFile> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CCL Config Writer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(WriteBehind::flushAll, "CCL Config Flush"));
+        }
+
+        public static synchronized void schedule(ConfigFile config) {
+            if (pending.add(config)) executor.schedule(() -> write(config), writeDelay, TimeUnit.MILLISECONDS);
+        }
+
+        private static void write(ConfigFile config) {
+            synchronized (WriteBehind.class) {
+                if (!pending.remove(config)) return;
+            }
+            try {
+                config.flush();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to write config file: " + config.file);
+                e.printStackTrace();
+            }
+        }
+
+        public static void flushAll() {
+            ConfigFile[] configs;
+            synchronized (WriteBehind.class) {
+                configs = pending.toArray(new ConfigFile[0]);
+            }
+            for (ConfigFile config : configs) write(config);
+        }
+    }
+
+    /**
+     * Reloads watched files when they change on disk
+     */
+    private static class FileWatcher {
+
+        private static WatchService service;
+        private static final Map<Path, List<ConfigFile>> watched = new HashMap<>();
+
+        public static synchronized void watch(ConfigFile config) throws IOException {
+            if (service == null) {
+                service = FileSystems.getDefault().newWatchService();
+                Thread t = new Thread(FileWatcher::run, "CCL Config Watcher");
+                t.setDaemon(true);
+                t.start();
+            }
+
+            Path dir = config.file.getAbsoluteFile().getParentFile().toPath();
+            List<ConfigFile> configs = watched.get(dir);
+            if (configs == null) {
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watched.put(dir, configs = new ArrayList<>());
+            }
+            if (!configs.contains(config)) configs.add(config);
+        }
+
+        public static synchronized void unwatch(ConfigFile config) {
+            List<ConfigFile> configs = watched.get(config.file.getAbsoluteFile().getParentFile().toPath());
+            if (configs != null) configs.remove(config);
+        }
+
+        private static synchronized List<ConfigFile> changed(Path dir, Path name) {
+            List<ConfigFile> changed = new ArrayList<>();
+            List<ConfigFile> configs = watched.get(dir);
+            if (configs != null) for (ConfigFile config : configs)
+                if (config.file.getName().equals(name.toString())) changed.add(config);
+            return changed;
+        }
+
+        private static void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = service.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    for (ConfigFile config : changed((Path) key.watchable(), (Path) event.context())) {
+                        try {
+                            String text = new String(Files.readAllBytes(config.file.toPath()));
+                            synchronized (config.treeLock()) {
+                                if (text.equals(config.written)) continue;
+                                config.written = text;
+                                config.reload();
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            System.err.println("Failed to reload config file: " + config.file);
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                key.reset();
+            }
+        }
+    }
+
     public static final byte[] crlf = new byte[] { 0xD, 0xA };
 
+    /**
+     * The time in milliseconds files in write behind mode wait after being saved before they are written
+     */
+    public static long writeDelay = 1000;
+
     public File file;
     private boolean loading;
+    private boolean writeBehind;
+    private boolean dirty;
+    /**
+     * The text last written, so the file watcher can ignore changes made by this file
+     */
+    private String written;
 
     public ConfigFile(File file) {
         newlinemode = 2;
@@ -33,30 +175,52 @@ public class ConfigFile extends ConfigTagParent {
     }
 
     protected void loadConfig() {
-        loading = true;
-        BufferedReader reader;
-        try {
-            reader = new BufferedReader(new FileReader(file));
+        synchronized (treeLock()) {
+            loading = true;
+            BufferedReader reader;
+            try {
+                reader = new BufferedReader(new FileReader(file));
 
-            while (true) {
-                reader.mark(2000);
-                String line = reader.readLine();
-                if (line != null && line.startsWith("#")) {
-                    if (comment == null || comment.equals("")) comment = line.substring(1);
-                    else comment = comment + "\n" + line.substring(1);
-                } else {
-                    reader.reset();
-                    break;
+                while (true) {
+                    reader.mark(2000);
+                    String line = reader.readLine();
+                    if (line != null && line.startsWith("#")) {
+                        if (comment == null || comment.equals("")) comment = line.substring(1);
+                        else comment = comment + "\n" + line.substring(1);
+                    } else {
+                        reader.reset();
+                        break;
+                    }
                 }
+                loadChildren(reader);
+                reader.close();
+
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                loading = false;
             }
-            loadChildren(reader);
-            reader.close();
+        }
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Reads the file again. Values in the file replace those in the tree, and tags missing from the file are kept.
+     */
+    public void reload() {
+        synchronized (treeLock()) {
+            comment = null;
+            loadConfig();
         }
+    }
 
-        loading = false;
+    /**
+     * Reloads the file when it is changed by another program, such as a text editor. Files are watched by a shared
+     * background thread, and the {@link ConfigTag.Value}s of changed tags are updated as they are next read.
+     */
+    public ConfigFile setReloadOnChange(boolean reload) throws IOException {
+        if (reload) FileWatcher.watch(this);
+        else FileWatcher.unwatch(this);
+        return this;
     }
 
     @Override
@@ -87,21 +251,66 @@ public class ConfigFile extends ConfigTagParent {
         writer.println(line);
     }
 
+    /**
+     * In write behind mode, saving only marks the file dirty. The file is written on a background thread
+     * {@link #writeDelay} milliseconds later, along with any other saves in that time, or on shutdown. Use
+     * {@link #flush()} to write it sooner. Otherwise the file is written every time it is saved.
+     */
+    public ConfigFile setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+        if (!writeBehind) flush();
+        return this;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
     public void saveConfig() {
-        if (loading) return;
+        if (loading && Thread.holdsLock(treeLock())) return;
 
-        PrintWriter writer;
-        try {
-            writer = new PrintWriter(file);
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+        synchronized (treeLock()) {
+            dirty = true;
         }
+        if (writeBehind) WriteBehind.schedule(this);
+        else flush();
+    }
+
+    /**
+     * Writes the file now if there are unwritten changes
+     */
+    public void flush() {
+        synchronized (treeLock()) {
+            if (!dirty) return;
 
-        writeComment(writer, 0);
-        ConfigFile.writeLine(writer, "", 0);
-        saveTagTree(writer, 0, "");
-        writer.flush();
-        writer.close();
+            StringWriter out = new StringWriter();
+            PrintWriter writer = new PrintWriter(out);
+            writeComment(writer, 0);
+            ConfigFile.writeLine(writer, "", 0);
+            saveTagTree(writer, 0, "");
+            writer.flush();
+
+            // write to a temporary file first so the config is never left half written
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                written = out.toString();
+                try (Writer fileWriter = new OutputStreamWriter(new FileOutputStream(tmp))) {
+                    fileWriter.write(written);
+                }
+                try {
+                    Files.move(
+                            tmp.toPath(),
+                            file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            dirty = false;
+        }
     }
 
     public boolean isLoading() {
@@ -1,6 +1,9 @@
 package codechicken.lib.config;
 
 import java.io.PrintWriter;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 public class ConfigTag extends ConfigTagParent {
 
@@ -11,6 +14,118 @@ public class ConfigTag extends ConfigTagParent {
         public T valueOf(String text) throws Exception;
     }
 
+    public static final IConfigType<Integer> INT = new IConfigType<Integer>() {
+
+        public String configValue(Integer entry) {
+            return Integer.toString(entry);
+        }
+
+        public Integer valueOf(String text) {
+            return Integer.parseInt(text);
+        }
+    };
+
+    public static final IConfigType<Integer> HEX = new IConfigType<Integer>() {
+
+        public String configValue(Integer entry) {
+            return "0x" + Long.toString(((long) entry) << 32 >>> 32, 16);
+        }
+
+        public Integer valueOf(String text) {
+            return (int) Long.parseLong(text.replace("0x", ""), 16);
+        }
+    };
+
+    public static final IConfigType<Boolean> BOOLEAN = new IConfigType<Boolean>() {
+
+        public String configValue(Boolean entry) {
+            return Boolean.toString(entry);
+        }
+
+        public Boolean valueOf(String text) {
+            if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("yes")) return true;
+            if (text.equalsIgnoreCase("false") || text.equalsIgnoreCase("no")) return false;
+            throw new NumberFormatException(text);
+        }
+    };
+
+    /**
+     * A live view of the value of a tag, parsed when it is first read and again only after the value changes. If the
+     * value is missing or can't be parsed, the tag is set to the default value.
+     * <p>
+     * The parsed value is kept along with the string it came from, so reads are a reference comparison. A value set
+     * from another thread, such as by {@link ConfigFile#reload()}, is seen as a whole.
+     */
+    public static class Value<T> implements Supplier<T> {
+
+        private static class Parsed<T> {
+
+            final String from;
+            final T value;
+
+            public Parsed(String from, T value) {
+                this.from = from;
+                this.value = value;
+            }
+        }
+
+        public final ConfigTag tag;
+        public final IConfigType<T> type;
+        public final T defaultValue;
+        private Parsed<T> parsed;
+
+        public Value(ConfigTag tag, IConfigType<T> type, T defaultValue) {
+            this.tag = tag;
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+
+        @Override
+        public T get() {
+            Parsed<T> p = parsed;
+            String value = tag.value;
+            if (p != null && p.from == value) return p.value;
+
+            if (value != null) {
+                try {
+                    parsed = new Parsed<>(value, type.valueOf(value));
+                    return parsed.value;
+                } catch (Exception ignored) {}
+            }
+            // the new value is parsed on the next read
+            tag.set(type, defaultValue);
+            return defaultValue;
+        }
+
+        public void set(T value) {
+            tag.set(type, value);
+        }
+    }
+
+    public static class IntValue extends Value<Integer> implements IntSupplier {
+
+        public IntValue(ConfigTag tag, IConfigType<Integer> type, int defaultValue) {
+            super(tag, type, defaultValue);
+        }
+
+        @Override
+        public int getAsInt() {
+            return get();
+        }
+    }
+
+    public static class BooleanValue extends Value<Boolean> implements BooleanSupplier {
+
+        public BooleanValue(ConfigTag tag, boolean defaultValue) {
+            super(tag, BOOLEAN, defaultValue);
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            return get();
+        }
+    }
+
     public ConfigTag(ConfigTagParent parent, String name) {
         this.parent = parent;
         this.name = name;
@@ -29,6 +144,11 @@ public class ConfigTag extends ConfigTagParent {
         parent.saveConfig();
     }
 
+    @Override
+    public Object treeLock() {
+        return parent.treeLock();
+    }
+
     /**
      * Called when the tag is loaded from a config file as opposed to constructed by a mod
      *
@@ -39,13 +159,17 @@ public class ConfigTag extends ConfigTagParent {
     }
 
     public void setValue(String value) {
-        this.value = value;
+        synchronized (treeLock()) {
+            this.value = value;
+        }
         saveConfig();
     }
 
     public void setDefaultValue(String defaultValue) {
         if (value == null) {
-            value = defaultValue;
+            synchronized (treeLock()) {
+                value = defaultValue;
+            }
             saveConfig();
         }
     }
@@ -135,6 +259,22 @@ public class ConfigTag extends ConfigTagParent {
         return defaultValue;
     }
 
+    public <T> Value<T> as(IConfigType<T> type, T defaultValue) {
+        return new Value<>(this, type, defaultValue);
+    }
+
+    public IntValue asInt(int defaultValue) {
+        return new IntValue(this, INT, defaultValue);
+    }
+
+    public IntValue asHex(int defaultValue) {
+        return new IntValue(this, HEX, defaultValue);
+    }
+
+    public BooleanValue asBoolean(boolean defaultValue) {
+        return new BooleanValue(this, defaultValue);
+    }
+
     public void save(PrintWriter writer, int tabs, String bracequalifier, boolean first) {
         String vname;
         if (qualifiedname.contains(".") && bracequalifier.length() > 0)
@@ -171,21 +311,26 @@ public class ConfigTag extends ConfigTagParent {
     }
 
     public ConfigTag setNewLine(boolean b) {
-        newline = b;
+        synchronized (treeLock()) {
+            newline = b;
+        }
         saveConfig();
         return this;
     }
 
     public ConfigTag useBraces() {
-        brace = true;
-        if (parent.newlinemode == 1) newline = true;
-
+        synchronized (treeLock()) {
+            brace = true;
+            if (parent.newlinemode == 1) newline = true;
+        }
         saveConfig();
         return this;
     }
 
     public ConfigTag setPosition(int pos) {
-        position = pos;
+        synchronized (treeLock()) {
+            position = pos;
+        }
         saveConfig();
         return this;
     }
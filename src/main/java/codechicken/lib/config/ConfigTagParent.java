@@ -62,25 +62,38 @@ public abstract class ConfigTagParent {
 
     public abstract String getNameQualifier();
 
+    /**
+     * @return The object held while the tree containing this tag is modified or written
+     */
+    public Object treeLock() {
+        return this;
+    }
+
     public ConfigTagParent setComment(String comment) {
-        this.comment = comment;
+        synchronized (treeLock()) {
+            this.comment = comment;
+        }
         saveConfig();
         return this;
     }
 
     public ConfigTagParent setSortMode(int mode) {
-        sortMode = mode;
+        synchronized (treeLock()) {
+            sortMode = mode;
+        }
         saveConfig();
         return this;
     }
 
     public ConfigTagParent setNewLineMode(int mode) {
-        newlinemode = mode;
-        for (Entry<String, ConfigTag> entry : childtags.entrySet()) {
-            ConfigTag tag = entry.getValue();
-            if (newlinemode == 0) tag.newline = false;
-            else if (newlinemode == 1) tag.newline = tag.brace;
-            else if (newlinemode == 2) tag.newline = true;
+        synchronized (treeLock()) {
+            newlinemode = mode;
+            for (Entry<String, ConfigTag> entry : childtags.entrySet()) {
+                ConfigTag tag = entry.getValue();
+                if (newlinemode == 0) tag.newline = false;
+                else if (newlinemode == 1) tag.newline = tag.brace;
+                else if (newlinemode == 2) tag.newline = true;
+            }
         }
         saveConfig();
         return this;
@@ -128,26 +141,27 @@ public abstract class ConfigTagParent {
     }
 
     public boolean removeTag(String tagname) {
-        removeChildFromFlatMap(tagname);
+        boolean ret;
+        synchronized (treeLock()) {
+            removeChildFromFlatMap(tagname);
 
-        ConfigTag tag = getTag(tagname, false);
-        if (tag == null) return false;
+            ConfigTag tag = getTag(tagname, false);
+            if (tag == null || tag.parent == null) return false;
 
-        int dotpos = tagname.lastIndexOf(".");
-        String lastpart = dotpos == -1 ? tagname : tagname.substring(dotpos + 1, tagname.length());
-        if (tag.parent != null) {
-            boolean ret = tag.parent.childtags.remove(lastpart) != null;
-            if (ret) saveConfig();
-            return ret;
+            int dotpos = tagname.lastIndexOf(".");
+            String lastpart = dotpos == -1 ? tagname : tagname.substring(dotpos + 1, tagname.length());
+            ret = tag.parent.childtags.remove(lastpart) != null;
         }
-
-        return false;
+        if (ret) saveConfig();
+        return ret;
     }
 
     public void addChild(ConfigTag tag) {
-        childtags.put(tag.name, tag);
+        synchronized (treeLock()) {
+            childtags.put(tag.name, tag);
 
-        addChildToFlatMap(tag.name, tag);
+            addChildToFlatMap(tag.name, tag);
+        }
     }
 
     private void addChildToFlatMap(String path, ConfigTag tag) {
@@ -1,13 +1,20 @@
 package codechicken.lib.data;
 
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraftforge.fluids.FluidStack;
 
 import codechicken.lib.vec.BlockCoord;
+import io.netty.handler.codec.DecoderException;
 
 public interface MCDataInput {
 
+    /**
+     * The longest array {@link #readItemStacks()} will read, so a bad length can't allocate an arbitrarily large array
+     */
+    public static final int MAX_ITEM_STACKS = 32768;
+
     public long readLong();
 
     public int readInt();
@@ -43,4 +50,32 @@ public interface MCDataInput {
     public ItemStack readItemStack();
 
     public FluidStack readFluidStack();
+
+    /**
+     * Reads an array of stacks written by {@link MCDataOutput#writeItemStacks(ItemStack[])}
+     */
+    public default ItemStack[] readItemStacks() {
+        int length = readVarInt();
+        if (length < 0 || length > MAX_ITEM_STACKS)
+            throw new DecoderException("Invalid item stack array length: " + length);
+        int count = readVarInt();
+        if (count < 0 || count > length)
+            throw new DecoderException("Invalid item stack count: " + count + " for length " + length);
+
+        ItemStack[] stacks = new ItemStack[length];
+        int slot = -1;
+        for (int n = count; n > 0; n--) {
+            int skip = readVarInt();
+            if (skip < 0 || skip >= length - slot - 1)
+                throw new DecoderException("Item stack slot out of bounds: skip " + skip + " after " + slot);
+            slot += skip + 1;
+            Item item = Item.getItemById(readVarInt());
+            int damage = readVarInt();
+            int size = readVarInt();
+            ItemStack stack = new ItemStack(item, size >> 1, damage >>> 1 ^ -(damage & 1));
+            if ((size & 1) != 0) stack.stackTagCompound = readNBTTagCompound();
+            stacks[slot] = stack;
+        }
+        return stacks;
+    }
 }
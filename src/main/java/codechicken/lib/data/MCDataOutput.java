@@ -1,5 +1,6 @@
 package codechicken.lib.data;
 
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraftforge.fluids.FluidStack;
@@ -41,4 +42,36 @@ public interface MCDataOutput {
     public MCDataOutput writeItemStack(ItemStack stack);
 
     public MCDataOutput writeFluidStack(FluidStack liquid);
+
+    /**
+     * Writes an array of stacks, read with {@link MCDataInput#readItemStacks()}. The length and number of stacks are
+     * followed by each stack as the number of empty slots skipped before it, its item id, damage (zigzag) and size,
+     * all varints, with NBT only for stacks that have a tag. The low bit of the size marks a tag, so sizes must fit in
+     * 31 bits. Arrays longer than {@link MCDataInput#MAX_ITEM_STACKS} are rejected.
+     */
+    public default MCDataOutput writeItemStacks(ItemStack[] stacks) {
+        if (stacks.length > MCDataInput.MAX_ITEM_STACKS)
+            throw new IllegalArgumentException("Too many item stacks: " + stacks.length);
+        int count = 0;
+        for (ItemStack stack : stacks) if (stack != null) count++;
+        writeVarInt(stacks.length);
+        writeVarInt(count);
+
+        int last = -1;
+        for (int i = 0; i < stacks.length; i++) {
+            ItemStack stack = stacks[i];
+            if (stack == null) continue;
+
+            int damage = stack.getItemDamage();
+            if (stack.stackSize << 1 >> 1 != stack.stackSize)
+                throw new IllegalArgumentException("Stack size out of range: " + stack.stackSize);
+            writeVarInt(i - last - 1);
+            writeVarInt(Item.getIdFromItem(stack.getItem()));
+            writeVarInt(damage << 1 ^ damage >> 31);
+            writeVarInt(stack.stackSize << 1 | (stack.stackTagCompound != null ? 1 : 0));
+            if (stack.stackTagCompound != null) writeNBTTagCompound(stack.stackTagCompound);
+            last = i;
+        }
+        return this;
+    }
 }
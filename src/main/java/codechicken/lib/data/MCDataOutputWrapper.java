@@ -25,7 +25,7 @@ public class MCDataOutputWrapper implements MCDataOutput {
      * @param i  The integer to write
      */
     public static void writeVarInt(DataOutput to, int i) throws IOException {
-        while ((i & 0x80) != 0) {
+        while ((i & -128) != 0) {
             to.writeByte(i & 0x7F | 0x80);
             i >>>= 7;
         }
@@ -212,6 +212,12 @@ public class MCDataOutputWrapper implements MCDataOutput {
         return this;
     }
 
+    @Override
+    public MCDataOutputWrapper writeItemStacks(ItemStack[] stacks) {
+        MCDataOutput.super.writeItemStacks(stacks);
+        return this;
+    }
+
     public MCDataOutputWrapper writeNBTTagCompound(NBTTagCompound compound) {
         try {
             if (compound == null) {
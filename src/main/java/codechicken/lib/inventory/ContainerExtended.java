@@ -12,6 +12,7 @@ import net.minecraft.inventory.Container;
 import net.minecraft.inventory.ICrafting;
 import net.minecraft.inventory.Slot;
 import net.minecraft.item.ItemStack;
+import net.minecraft.network.Packet;
 import net.minecraft.network.play.INetHandlerPlayClient;
 import net.minecraft.network.play.INetHandlerPlayServer;
 
@@ -241,7 +242,17 @@ public abstract class ContainerExtended extends Container implements ICrafting {
     }
 
     public void sendContainerPacket(PacketCustom packet) {
-        for (EntityPlayerMP player : playerCrafters) packet.sendToPlayer(player);
+        sendContainerPacket(packet, playerCrafters);
+    }
+
+    /**
+     * Sends packet to each player, building it only once
+     */
+    public static void sendContainerPacket(PacketCustom packet, List<EntityPlayerMP> players) {
+        if (players.isEmpty()) return;
+
+        Packet built = packet.toPacket();
+        for (EntityPlayerMP player : players) PacketCustom.sendToPlayer(built, player);
     }
 
     /**
@@ -10,9 +10,14 @@ import net.minecraft.item.ItemStack;
 
 import codechicken.lib.packet.PacketCustom;
 
+/**
+ * Container with synced variables. All vars changed in a tick are sent in one packet, a flag for a full update, a bit
+ * mask of the vars included, then each var's data. The packet is built once and sent to every watching player.
+ */
 public abstract class ContainerSynchronised extends ContainerExtended {
 
     private ArrayList<IContainerSyncVar> syncVars = new ArrayList<IContainerSyncVar>();
+    private byte[] changed = new byte[0];
 
     /**
      * Create a packet to be used to send a synced variable update. Calls getPacket. Can be overriden to add extra
@@ -26,39 +31,63 @@ public abstract class ContainerSynchronised extends ContainerExtended {
     public final void detectAndSendChanges() {
         super.detectAndSendChanges();
 
+        boolean any = false;
         for (int i = 0; i < syncVars.size(); i++) {
+            if (syncVars.get(i).changed()) {
+                changed[i >> 3] |= 1 << (i & 7);
+                any = true;
+            } else changed[i >> 3] &= ~(1 << (i & 7));
+        }
+        if (!any) return;
+
+        PacketCustom packet = createSyncPacket();
+        packet.writeBoolean(false);
+        packet.writeByteArray(changed);
+        for (int i = 0; i < syncVars.size(); i++) {
+            if ((changed[i >> 3] & 1 << (i & 7)) == 0) continue;
+
             IContainerSyncVar var = syncVars.get(i);
-            if (var.changed()) {
-                PacketCustom packet = createSyncPacket();
-                packet.writeByte(i);
-                var.writeChange(packet);
-                sendContainerPacket(packet);
-                var.reset();
-            }
+            var.writeChange(packet);
+            var.reset();
         }
+        sendContainerPacket(packet);
     }
 
+    /**
+     * Sends every var with {@link IContainerSyncVar#writeFull}. Vars are not reset, so players already watching are
+     * still sent any pending changes by the next detectAndSendChanges
+     */
     @Override
     public void sendContainerAndContentsToPlayer(Container container, List<ItemStack> list,
             List<EntityPlayerMP> playerCrafters) {
         super.sendContainerAndContentsToPlayer(container, list, playerCrafters);
-        for (int i = 0; i < syncVars.size(); i++) {
-            IContainerSyncVar var = syncVars.get(i);
-            PacketCustom packet = createSyncPacket();
-            packet.writeByte(i);
-            var.writeChange(packet);
-            var.reset();
-            for (EntityPlayerMP player : playerCrafters) packet.sendToPlayer(player);
-        }
+        if (syncVars.isEmpty()) return;
+
+        byte[] all = new byte[changed.length];
+        for (int i = 0; i < syncVars.size(); i++) all[i >> 3] |= 1 << (i & 7);
+
+        PacketCustom packet = createSyncPacket();
+        packet.writeBoolean(true);
+        packet.writeByteArray(all);
+        for (IContainerSyncVar var : syncVars) var.writeFull(packet);
+        sendContainerPacket(packet, playerCrafters);
     }
 
     public void addSyncVar(IContainerSyncVar var) {
         syncVars.add(var);
+        changed = new byte[syncVars.size() + 7 >> 3];
     }
 
     @Override
     public final void handleClientPacket(PacketCustom packet) {
-        syncVars.get(packet.readUByte()).readChange(packet);
+        boolean full = packet.readBoolean();
+        byte[] mask = packet.readByteArray(changed.length);
+        for (int i = 0; i < syncVars.size(); i++) {
+            if ((mask[i >> 3] & 1 << (i & 7)) == 0) continue;
+
+            if (full) syncVars.get(i).readFull(packet);
+            else syncVars.get(i).readChange(packet);
+        }
     }
 
     public List<IContainerSyncVar> getSyncedVars() {
@@ -8,7 +8,22 @@ public interface IContainerSyncVar {
 
     public void reset();
 
+    /**
+     * Writes the change since the last reset. Every watching player receives every change, in order.
+     */
     public void writeChange(PacketCustom packet);
 
     public void readChange(PacketCustom packet);
+
+    /**
+     * Writes the value as of the last reset for a player that has not seen earlier changes. Defaults to writeChange,
+     * which is only correct for vars that write their whole value as the change.
+     */
+    public default void writeFull(PacketCustom packet) {
+        writeChange(packet);
+    }
+
+    public default void readFull(PacketCustom packet) {
+        readChange(packet);
+    }
 }
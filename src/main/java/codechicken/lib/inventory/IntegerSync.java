@@ -2,6 +2,9 @@ package codechicken.lib.inventory;
 
 import codechicken.lib.packet.PacketCustom;
 
+/**
+ * Syncs an int as a zigzag varint of the difference from the last sent value, so small changes take one byte
+ */
 public abstract class IntegerSync implements IContainerSyncVar {
 
     public int c_value;
@@ -18,11 +21,23 @@ public abstract class IntegerSync implements IContainerSyncVar {
 
     @Override
     public void writeChange(PacketCustom packet) {
-        packet.writeInt(getValue());
+        int delta = getValue() - c_value;
+        packet.writeVarInt(delta << 1 ^ delta >> 31);
     }
 
     @Override
     public void readChange(PacketCustom packet) {
+        int zigzag = packet.readVarInt();
+        c_value += zigzag >>> 1 ^ -(zigzag & 1);
+    }
+
+    @Override
+    public void writeFull(PacketCustom packet) {
+        packet.writeInt(c_value);
+    }
+
+    @Override
+    public void readFull(PacketCustom packet) {
         c_value = packet.readInt();
     }
 
@@ -0,0 +1,177 @@
+package codechicken.lib.inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import net.minecraft.inventory.IInventory;
+import net.minecraft.item.ItemStack;
+
+/**
+ * Index of the partial stacks and empty slots in an {@link InventoryRange}, for repeated insertion. Inserting or
+ * querying space only visits the slots holding a matching stack and the empty slots, instead of every slot in the
+ * range. Slots are filled in the same order as {@link InventoryUtils#insertItem(InventoryRange, ItemStack, boolean)}.
+ * <p>
+ * The index is updated by its own insertions, and rebuilt on next use after {@link #invalidate()}. The inventory
+ * must call invalidate from markDirty, and anything else changing the slots must call it too.
+ */
+public class InventoryIndex {
+
+    public final InventoryRange inv;
+
+    // positions in inv.slots of the partial stacks of each item, ascending, with the count first
+    private final HashMap<ItemKey, int[]> partial = new HashMap<>();
+    // positions of the empty slots, ascending, -1 once filled
+    private int[] empty = new int[0];
+    private int emptyStart;
+    private boolean valid;
+    private boolean writing;
+
+    public InventoryIndex(InventoryRange inv) {
+        this.inv = inv;
+    }
+
+    public InventoryIndex(IInventory inv) {
+        this(new InventoryRange(inv));
+    }
+
+    /**
+     * Marks the index to be rebuilt. Calls made while the index itself is inserting are ignored.
+     */
+    public void invalidate() {
+        if (!writing) valid = false;
+    }
+
+    /**
+     * Stacks with the same key can stack with each other if {@link InventoryUtils#canStack} allows it at all
+     */
+    private static ItemKey key(ItemStack stack) {
+        return new ItemKey(stack.getItem(), stack.getHasSubtypes() ? stack.getItemDamage() : 0, stack.stackTagCompound);
+    }
+
+    private boolean full(ItemStack base) {
+        return base.stackSize >= Math.min(inv.inv.getInventoryStackLimit(), base.getMaxStackSize());
+    }
+
+    private void build() {
+        partial.clear();
+        int[] slots = inv.slots;
+        if (empty.length != slots.length) empty = new int[slots.length];
+        int emptyCount = 0;
+        for (int i = 0; i < slots.length; i++) {
+            ItemStack base = inv.inv.getStackInSlot(slots[i]);
+            if (base == null) empty[emptyCount++] = i;
+            else if (base.isStackable() && !full(base)) add(key(base), i);
+        }
+        Arrays.fill(empty, emptyCount, empty.length, -1);
+        emptyStart = 0;
+        valid = true;
+    }
+
+    private void add(ItemKey key, int pos) {
+        int[] list = partial.get(key);
+        if (list == null) partial.put(key, list = new int[4]);
+        else if (list[0] + 1 == list.length) partial.put(key, list = Arrays.copyOf(list, list.length * 2));
+
+        int i = list[0]++;
+        for (; i > 0 && list[i] > pos; i--) list[i + 1] = list[i];
+        list[i + 1] = pos;
+    }
+
+    private void write(int slot, ItemStack stack) {
+        writing = true;
+        try {
+            inv.inv.setInventorySlotContents(slot, stack);
+        } finally {
+            writing = false;
+        }
+    }
+
+    /**
+     * Same as {@link InventoryUtils#insertItem(InventoryRange, ItemStack, boolean)}
+     *
+     * @param simulate If set to true, no items will actually be inserted
+     * @return The number of items unable to be inserted
+     */
+    public int insertItem(ItemStack stack, boolean simulate) {
+        if (!valid) build();
+
+        int remaining = stack.stackSize;
+        ItemKey key = key(stack);
+        int[] list = partial.get(key);
+        if (list != null) {
+            for (int i = 1; i <= list[0] && remaining > 0;) {
+                int slot = inv.slots[list[i]];
+                ItemStack base = inv.inv.getStackInSlot(slot);
+                int fit = base == null ? 0 : Math.min(InventoryUtils.getSlotSpace(inv, slot, stack), remaining);
+                if (fit > 0) {
+                    remaining -= fit;
+                    if (simulate) {
+                        i++;
+                        continue;
+                    }
+                    base.stackSize += fit;
+                    write(slot, base);
+                }
+
+                if (!simulate && (base == null || full(base))) {
+                    System.arraycopy(list, i + 1, list, i, list[0] - i);
+                    list[0]--;
+                } else i++;
+            }
+            if (list[0] == 0) partial.remove(key);
+        }
+
+        for (int i = emptyStart; i < empty.length && remaining > 0; i++) {
+            int pos = empty[i];
+            if (pos < 0) continue;
+
+            int slot = inv.slots[pos];
+            if (inv.inv.getStackInSlot(slot) != null) continue;
+            int fit = Math.min(InventoryUtils.getSlotSpace(inv, slot, stack), remaining);
+            if (fit <= 0) continue;
+
+            if (!simulate) {
+                ItemStack base = InventoryUtils.copyStack(stack, fit);
+                write(slot, base);
+                empty[i] = -1;
+                if (base.isStackable() && !full(base)) add(key, pos);
+            }
+            remaining -= fit;
+        }
+        while (emptyStart < empty.length && empty[emptyStart] < 0) emptyStart++;
+
+        return remaining;
+    }
+
+    /**
+     * Inserts each stack in turn
+     *
+     * @return The parts of stacks that could not be inserted
+     */
+    public List<ItemStack> insertItems(List<ItemStack> stacks) {
+        List<ItemStack> remaining = new ArrayList<>();
+        for (ItemStack stack : stacks) {
+            int left = insertItem(stack, false);
+            if (left > 0) remaining.add(InventoryUtils.copyStack(stack, left));
+        }
+        return remaining;
+    }
+
+    /**
+     * Same as {@link InventoryUtils#getInsertibleQuantity(InventoryRange, ItemStack)}
+     */
+    public int getInsertibleQuantity(ItemStack stack) {
+        if (!valid) build();
+
+        int quantity = 0;
+        int[] list = partial.get(key(stack));
+        if (list != null) for (int i = 1; i <= list[0]; i++)
+            quantity += InventoryUtils.getSlotSpace(inv, inv.slots[list[i]], stack);
+
+        for (int i = emptyStart; i < empty.length; i++)
+            if (empty[i] >= 0) quantity += InventoryUtils.getSlotSpace(inv, inv.slots[empty[i]], stack);
+        return quantity;
+    }
+}
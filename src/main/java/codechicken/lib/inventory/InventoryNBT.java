@@ -1,26 +1,137 @@
 package codechicken.lib.inventory;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.inventory.IInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
 
 /**
  * IInventory implementation which saves and loads from an NBT tag
+ * <p>
+ * Changes are patched into the items list one slot at a time. Slots set through
+ * {@link #setInventorySlotContents(int, ItemStack)} are marked dirty, and {@link #markDirty()} finds stacks changed in
+ * place by comparing their item, size, damage and tag reference against what was last written. Entries are kept in
+ * slot order, so equal contents always give equal tags. With {@link #setDeferWrites(boolean)} changes are only written
+ * by {@link #flush()}.
  */
 public class InventoryNBT implements IInventory {
 
     protected ItemStack[] items;
     protected NBTTagCompound tag;
 
+    private boolean deferWrites;
+    private final BitSet dirty = new BitSet();
+    private boolean scan;
+
+    // the list in tag and the list index of each slot's entry, or -1
+    private NBTTagList list;
+    private final int[] index;
+
+    // what was last written for each slot
+    private final Item[] writtenItem;
+    private final int[] writtenSize;
+    private final int[] writtenDamage;
+    private final NBTTagCompound[] writtenTag;
+
     public InventoryNBT(int size, NBTTagCompound tag) {
         this.tag = tag;
         items = new ItemStack[size];
+        index = new int[size];
+        writtenItem = new Item[size];
+        writtenSize = new int[size];
+        writtenDamage = new int[size];
+        writtenTag = new NBTTagCompound[size];
         readNBT();
     }
 
+    /**
+     * If true, changes are not written to the tag until {@link #flush()} is called, which must then be done before
+     * the tag is read or saved.
+     */
+    public InventoryNBT setDeferWrites(boolean deferWrites) {
+        this.deferWrites = deferWrites;
+        if (!deferWrites) flush();
+        return this;
+    }
+
+    /**
+     * Writes any pending changes to the tag
+     */
+    public void flush() {
+        if (scan) {
+            scan = false;
+            for (int i = 0; i < items.length; i++) if (!written(i)) dirty.set(i);
+        }
+        if (dirty.isEmpty()) return;
+
+        if (list == null || tag.getTag("items") != list) writeNBT();
+        else for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) writeSlot(i);
+        dirty.clear();
+    }
+
+    /**
+     * @return The tag, with pending changes written
+     */
+    public NBTTagCompound getTag() {
+        flush();
+        return tag;
+    }
+
+    private boolean written(int slot) {
+        ItemStack stack = items[slot];
+        if (stack == null) return writtenItem[slot] == null;
+        return stack.getItem() == writtenItem[slot] && stack.stackSize == writtenSize[slot]
+                && stack.getItemDamage() == writtenDamage[slot]
+                && stack.stackTagCompound == writtenTag[slot];
+    }
+
     private void writeNBT() {
-        tag.setTag("items", InventoryUtils.writeItemStacksToTag(items, getInventoryStackLimit()));
+        list = new NBTTagList();
+        Arrays.fill(index, -1);
+        for (int i = 0; i < items.length; i++) writeSlot(i);
+        tag.setTag("items", list);
+    }
+
+    private void writeSlot(int slot) {
+        ItemStack stack = items[slot];
+        int i = index[slot];
+        if (stack == null) {
+            writtenItem[slot] = null;
+            writtenTag[slot] = null;
+            if (i < 0) return;
+
+            list.removeTag(i);
+            index[slot] = -1;
+            for (int s = slot + 1; s < index.length; s++) if (index[s] >= 0) index[s]--;
+            return;
+        }
+
+        writtenItem[slot] = stack.getItem();
+        writtenSize[slot] = stack.stackSize;
+        writtenDamage[slot] = stack.getItemDamage();
+        writtenTag[slot] = stack.stackTagCompound;
+        NBTTagCompound entry = InventoryUtils.writeItemStackToTag(stack, slot, getInventoryStackLimit());
+        if (i >= 0) {
+            list.func_150304_a(i, entry);
+            return;
+        }
+
+        // insert before the entry of the next filled slot, shifting the rest up
+        i = list.tagCount();
+        for (int s = slot + 1; s < index.length; s++) {
+            if (index[s] < 0) continue;
+            if (index[s] < i) i = index[s];
+            index[s]++;
+        }
+        list.appendTag(entry);
+        for (int j = list.tagCount() - 1; j > i; j--) list.func_150304_a(j, list.getCompoundTagAt(j - 1));
+        if (i < list.tagCount() - 1) list.func_150304_a(i, entry);
+        index[slot] = i;
     }
 
     private void readNBT() {
@@ -50,6 +161,7 @@ public class InventoryNBT implements IInventory {
     @Override
     public void setInventorySlotContents(int slot, ItemStack stack) {
         items[slot] = stack;
+        dirty.set(slot);
         markDirty();
     }
 
@@ -65,7 +177,8 @@ public class InventoryNBT implements IInventory {
 
     @Override
     public void markDirty() {
-        writeNBT();
+        scan = true;
+        if (!deferWrites) flush();
     }
 
     @Override
@@ -101,19 +101,22 @@ public class InventoryUtils {
      */
     public static NBTTagList writeItemStacksToTag(ItemStack[] items, int maxQuantity) {
         NBTTagList tagList = new NBTTagList();
-        for (int i = 0; i < items.length; i++) {
-            if (items[i] != null) {
-                NBTTagCompound tag = new NBTTagCompound();
-                tag.setShort("Slot", (short) i);
-                items[i].writeToNBT(tag);
+        for (int i = 0; i < items.length; i++)
+            if (items[i] != null) tagList.appendTag(writeItemStackToTag(items[i], i, maxQuantity));
+        return tagList;
+    }
 
-                if (maxQuantity > Short.MAX_VALUE) tag.setInteger("Quantity", items[i].stackSize);
-                else if (maxQuantity > Byte.MAX_VALUE) tag.setShort("Quantity", (short) items[i].stackSize);
+    /**
+     * Writes one entry of {@link #writeItemStacksToTag(ItemStack[], int)}
+     */
+    public static NBTTagCompound writeItemStackToTag(ItemStack stack, int slot, int maxQuantity) {
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setShort("Slot", (short) slot);
+        stack.writeToNBT(tag);
 
-                tagList.appendTag(tag);
-            }
-        }
-        return tagList;
+        if (maxQuantity > Short.MAX_VALUE) tag.setInteger("Quantity", stack.stackSize);
+        else if (maxQuantity > Byte.MAX_VALUE) tag.setShort("Quantity", (short) stack.stackSize);
+        return tag;
     }
 
     /**
@@ -156,8 +159,7 @@ public class InventoryUtils {
      */
     public static int getInsertibleQuantity(InventoryRange inv, ItemStack stack) {
         int quantity = 0;
-        stack = copyStack(stack, Integer.MAX_VALUE);
-        for (int slot : inv.slots) quantity += fitStackInSlot(inv, slot, stack);
+        for (int slot : inv.slots) quantity += getSlotSpace(inv, slot, stack);
 
         return quantity;
     }
@@ -167,12 +169,18 @@ public class InventoryUtils {
     }
 
     public static int fitStackInSlot(InventoryRange inv, int slot, ItemStack stack) {
+        return Math.min(getSlotSpace(inv, slot, stack), stack.stackSize);
+    }
+
+    /**
+     * @return The number of items like stack that can be inserted into slot, regardless of the size of stack
+     */
+    public static int getSlotSpace(InventoryRange inv, int slot, ItemStack stack) {
         ItemStack base = inv.inv.getStackInSlot(slot);
         if (!canStack(base, stack) || !inv.canInsertItem(slot, stack)) return 0;
 
-        int fit = base != null ? incrStackSize(base, inv.inv.getInventoryStackLimit() - base.stackSize)
+        return base != null ? incrStackSize(base, inv.inv.getInventoryStackLimit() - base.stackSize)
                 : inv.inv.getInventoryStackLimit();
-        return Math.min(fit, stack.stackSize);
     }
 
     public static int fitStackInSlot(IInventory inv, int slot, ItemStack stack) {
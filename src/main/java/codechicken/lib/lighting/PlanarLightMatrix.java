@@ -9,7 +9,19 @@ import codechicken.lib.vec.BlockCoord;
 public class PlanarLightMatrix extends PlanarLightModel {
 
     public static final int operationIndex = CCRenderState.registerOperation();
+    /**
+     * @deprecated Shared between all threads, use {@link #instance()} when rendering off the client thread
+     */
+    @Deprecated
     public static PlanarLightMatrix instance = new PlanarLightMatrix();
+    private static final ThreadLocal<PlanarLightMatrix> instances = ThreadLocal.withInitial(PlanarLightMatrix::new);
+
+    /**
+     * @return The instance for the current thread
+     */
+    public static PlanarLightMatrix instance() {
+        return instances.get();
+    }
 
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
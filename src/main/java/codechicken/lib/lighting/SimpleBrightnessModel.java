@@ -12,7 +12,20 @@ import codechicken.lib.vec.BlockCoord;
 public class SimpleBrightnessModel implements CCRenderState.IVertexOperation {
 
     public static final int operationIndex = CCRenderState.registerOperation();
+    /**
+     * @deprecated Shared between all threads, use {@link #instance()} when rendering off the client thread
+     */
+    @Deprecated
     public static SimpleBrightnessModel instance = new SimpleBrightnessModel();
+    private static final ThreadLocal<SimpleBrightnessModel> instances = ThreadLocal
+            .withInitial(SimpleBrightnessModel::new);
+
+    /**
+     * @return The instance for the current thread
+     */
+    public static SimpleBrightnessModel instance() {
+        return instances.get();
+    }
 
     public IBlockAccess access;
     public BlockCoord pos = new BlockCoord();
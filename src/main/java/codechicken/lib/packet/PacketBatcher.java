@@ -0,0 +1,196 @@
+package codechicken.lib.packet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.play.INetHandlerPlayClient;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.World;
+
+import codechicken.lib.packet.PacketCustom.IClientPacketHandler;
+import codechicken.lib.world.ChunkWatcherIndex;
+import cpw.mods.fml.common.FMLCommonHandler;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import cpw.mods.fml.common.network.internal.FMLProxyPacket;
+import cpw.mods.fml.relauncher.Side;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Collects PacketCustoms sent to each player during a server tick and flushes them at the end of the tick as framed
+ * multi-packets on the {@link #channel} channel, compressed when large. The client splits each frame and dispatches
+ * the contained packets to the handlers assigned to their own channels, in the order they were queued.
+ * <p>
+ * Batched packets are delayed until the end of the tick, so they may arrive after packets that were sent directly
+ * later in the same tick. Only batch packets that don't need to be ordered against unbatched ones.
+ */
+public class PacketBatcher {
+
+    public static final String channel = "CCL:Batch";
+    /**
+     * Frames are closed before exceeding this many bytes, so each fits in a single custom payload packet
+     */
+    public static int maxFrameSize = 32000;
+    /**
+     * Frames larger than this many bytes are compressed
+     */
+    public static int compressThreshold = 256;
+
+    private static boolean initialised;
+    private static final Map<EntityPlayerMP, List<FMLProxyPacket>> batches = new IdentityHashMap<>();
+
+    public static class BatchEventHandler {
+
+        @SubscribeEvent
+        public void serverTick(TickEvent.ServerTickEvent event) {
+            if (event.phase == TickEvent.Phase.END) flush();
+        }
+    }
+
+    public static void init() {
+        if (initialised) return;
+        initialised = true;
+
+        PacketCustom.getOrCreateChannel(channel, Side.SERVER);
+        if (FMLCommonHandler.instance().getSide().isClient())
+            PacketCustom.assignHandler(channel, new IClientPacketHandler() {
+
+                @Override
+                public void handlePacket(PacketCustom packet, Minecraft mc, INetHandlerPlayClient handler) {
+                    split(packet, handler);
+                }
+            });
+        FMLCommonHandler.instance().bus().register(new BatchEventHandler());
+    }
+
+    /**
+     * Queues packet to be sent to player at the end of the tick. Sent immediately if batching has not been initialised
+     */
+    public static void sendToPlayer(PacketCustom packet, EntityPlayerMP player) {
+        queue(packet.toPacket(), player);
+    }
+
+    public static void sendToPlayers(PacketCustom packet, Collection<EntityPlayerMP> players) {
+        if (players.isEmpty()) return;
+
+        FMLProxyPacket built = packet.toPacket();
+        for (EntityPlayerMP player : players) queue(built, player);
+    }
+
+    public static void sendToChunk(PacketCustom packet, World world, int chunkX, int chunkZ) {
+        sendToPlayers(packet, ChunkWatcherIndex.getWatchers(world, chunkX, chunkZ));
+    }
+
+    public static void sendToChunks(PacketCustom packet, World world, Collection<ChunkCoordIntPair> chunks) {
+        sendToPlayers(packet, ChunkWatcherIndex.getWatchers(world, chunks));
+    }
+
+    private static void queue(FMLProxyPacket packet, EntityPlayerMP player) {
+        if (!initialised) {
+            player.playerNetServerHandler.sendPacket(packet);
+            return;
+        }
+
+        synchronized (batches) {
+            List<FMLProxyPacket> batch = batches.get(player);
+            if (batch == null) batches.put(player, batch = new ArrayList<>());
+            batch.add(packet);
+        }
+    }
+
+    /**
+     * Sends all queued packets. Called automatically at the end of each server tick
+     */
+    public static void flush() {
+        List<Map.Entry<EntityPlayerMP, List<FMLProxyPacket>>> pending;
+        synchronized (batches) {
+            if (batches.isEmpty()) return;
+            pending = new ArrayList<>(batches.entrySet());
+            batches.clear();
+        }
+
+        for (Map.Entry<EntityPlayerMP, List<FMLProxyPacket>> entry : pending) {
+            EntityPlayerMP player = entry.getKey();
+            if (player.playerNetServerHandler == null) continue;
+
+            for (FMLProxyPacket packet : frame(entry.getValue())) player.playerNetServerHandler.sendPacket(packet);
+        }
+    }
+
+    /**
+     * Packs packets into as few frames as possible. Lone packets and packets too large to share a frame are passed
+     * through unchanged.
+     */
+    private static List<FMLProxyPacket> frame(List<FMLProxyPacket> packets) {
+        if (packets.size() == 1) return packets;
+
+        List<FMLProxyPacket> out = new ArrayList<>();
+        PacketCustom frame = null;
+        FMLProxyPacket first = null;
+        for (FMLProxyPacket packet : packets) {
+            if (entrySize(packet) > maxFrameSize) {
+                if (frame != null) out.add(close(frame));
+                else if (first != null) out.add(first);
+                frame = null;
+                first = null;
+                out.add(packet);
+                continue;
+            }
+
+            if (frame != null && frame.getByteBuf().readableBytes() + entrySize(packet) > maxFrameSize) {
+                out.add(close(frame));
+                frame = null;
+            }
+
+            if (frame == null && first == null) {
+                first = packet;
+                continue;
+            }
+            if (frame == null) {
+                frame = new PacketCustom(channel, 1);
+                append(frame, first);
+                first = null;
+            }
+            append(frame, packet);
+        }
+
+        if (frame != null) out.add(close(frame));
+        else if (first != null) out.add(first);
+        return out;
+    }
+
+    private static int entrySize(FMLProxyPacket packet) {
+        // string length prefix + 3 bytes per char worst case + 5 byte varint + payload
+        return 5 + packet.channel().length() * 3 + 5 + packet.payload().readableBytes();
+    }
+
+    private static void append(PacketCustom frame, FMLProxyPacket packet) {
+        ByteBuf payload = packet.payload();
+        frame.writeString(packet.channel());
+        frame.writeVarInt(payload.readableBytes());
+        frame.getByteBuf().writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+    }
+
+    private static FMLProxyPacket close(PacketCustom frame) {
+        if (frame.getByteBuf().readableBytes() > compressThreshold) frame.compress();
+        return frame.toPacket();
+    }
+
+    private static void split(PacketCustom frame, INetHandlerPlayClient handler) {
+        ByteBuf buf = frame.getByteBuf();
+        while (buf.isReadable()) {
+            String channelName = frame.readString();
+            ByteBuf payload = buf.readSlice(frame.readVarInt());
+            try {
+                PacketCustom.dispatch(channelName, payload, handler, Side.CLIENT);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to handle batched packet on channel: " + channelName, e);
+            }
+        }
+    }
+}
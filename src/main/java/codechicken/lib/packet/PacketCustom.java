@@ -1,5 +1,6 @@
 package codechicken.lib.packet;
 
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.zip.Deflater;
@@ -17,9 +18,11 @@ import net.minecraft.network.Packet;
 import net.minecraft.network.play.INetHandlerPlayClient;
 import net.minecraft.network.play.INetHandlerPlayServer;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.management.PlayerManager;
+import net.minecraft.server.management.ServerConfigurationManager;
+import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.fluids.Fluid;
 import net.minecraftforge.fluids.FluidRegistry;
 import net.minecraftforge.fluids.FluidStack;
@@ -29,6 +32,7 @@ import com.google.common.collect.Maps;
 import codechicken.lib.data.MCDataInput;
 import codechicken.lib.data.MCDataOutput;
 import codechicken.lib.vec.BlockCoord;
+import codechicken.lib.world.ChunkWatcherIndex;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.ModContainer;
 import cpw.mods.fml.common.network.ByteBufUtils;
@@ -41,6 +45,7 @@ import cpw.mods.fml.common.network.internal.FMLProxyPacket;
 import cpw.mods.fml.relauncher.Side;
 import cpw.mods.fml.relauncher.SideOnly;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -177,14 +182,32 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
                 .put(side, side == Side.SERVER ? new ServerInboundHandler(handler) : new ClientInboundHandler(handler));
     }
 
+    /**
+     * Passes an incoming payload to the handler assigned to channelName, as if it had arrived on that channel
+     */
+    public static void dispatch(String channelName, ByteBuf payload, INetHandler netHandler, Side side)
+            throws Exception {
+        CustomInboundHandler inbound = NetworkRegistry.INSTANCE.hasChannel(channelName, side)
+                ? NetworkRegistry.INSTANCE.getChannel(channelName, side).attr(cclHandler).get()
+                : null;
+        CustomHandler handler = inbound == null ? null : inbound.handlers.get(side);
+        if (handler != null) handler.handle(netHandler, channelName, new PacketCustom(payload));
+        else System.err.println("No PacketCustom handler for channel: " + channelName);
+    }
+
     public static void assignHandshakeHandler(Object channelKey, IHandshakeHandler handler) {
         FMLEmbeddedChannel channel = getOrCreateChannel(channelName(channelKey), Side.SERVER);
         channel.pipeline().addLast(new HandshakeInboundHandler(handler));
     }
 
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
     private ByteBuf byteBuf;
     private String channel;
     private int type;
+    private boolean pooled;
+    private FMLProxyPacket built;
 
     public PacketCustom(ByteBuf payload) {
         byteBuf = payload;
@@ -195,31 +218,60 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public PacketCustom(Object channelKey, int type) {
+        this(channelKey, type, Unpooled.buffer());
+    }
+
+    private PacketCustom(Object channelKey, int type, ByteBuf buffer) {
         if (type <= 0 || type >= 0x80)
             throw new IllegalArgumentException("Packet type: " + type + " is not within required 0 < t < 0x80");
 
         this.channel = channelName(channelKey);
         this.type = type;
-        byteBuf = Unpooled.buffer();
+        byteBuf = buffer;
         byteBuf.writeByte(type);
     }
 
+    /**
+     * Creates an outgoing packet that writes into a buffer from the pooled allocator. The buffer is returned to the
+     * pool by the first call to toPacket, which builds the packet once and returns it to all later sends, so no more
+     * data may be written after the first send. Call release() on a packet that is never sent.
+     */
+    public static PacketCustom pooled(Object channelKey, int type) {
+        PacketCustom packet = new PacketCustom(channelKey, type, PooledByteBufAllocator.DEFAULT.heapBuffer());
+        packet.pooled = true;
+        return packet;
+    }
+
+    /**
+     * Returns the buffer of a pooled packet to the pool. Has no effect on unpooled or already released packets
+     */
+    public void release() {
+        if (pooled && byteBuf != null) {
+            byteBuf.release();
+            byteBuf = null;
+        }
+    }
+
     /**
      * Decompresses the remaining ByteBuf (after type has been read) using Snappy
      */
     private void decompress() {
-        Inflater inflater = new Inflater();
+        Inflater inflater = inflaters.get();
         try {
             int len = byteBuf.readInt();
             ByteBuf out = Unpooled.buffer(len);
-            inflater.setInput(byteBuf.array(), byteBuf.readerIndex(), byteBuf.readableBytes());
-            inflater.inflate(out.array());
+            if (byteBuf.hasArray()) inflater.setInput(
+                    byteBuf.array(),
+                    byteBuf.arrayOffset() + byteBuf.readerIndex(),
+                    byteBuf.readableBytes());
+            else inflater.setInput(readByteArray(byteBuf.readableBytes()));
+            inflater.inflate(out.array(), out.arrayOffset(), len);
             out.writerIndex(len);
             byteBuf = out;
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
-            inflater.end();
+            inflater.reset();
         }
     }
 
@@ -227,26 +279,30 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
      * Compresses the payload ByteBuf after the type byte
      */
     private void do_compress() {
-        Deflater deflater = new Deflater();
+        Deflater deflater = deflaters.get();
+        ByteBuf out = null;
         try {
             byteBuf.readerIndex(1);
             int len = byteBuf.readableBytes();
-            deflater.setInput(byteBuf.array(), byteBuf.readerIndex(), len);
+            deflater.setInput(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), len);
             deflater.finish();
-            ByteBuf out = Unpooled.buffer(len + 5);
-            int clen = deflater.deflate(out.array(), 5, len);
+            out = pooled ? byteBuf.alloc().heapBuffer(len + 5) : Unpooled.buffer(len + 5);
+            int clen = deflater.deflate(out.array(), out.arrayOffset() + 5, len);
             if (clen >= len - 5 || !deflater.finished()) // not worth compressing, gets larger
                 return;
 
             out.setByte(0, type | 0x80);
             out.setInt(1, len);
             out.writerIndex(clen + 5);
+            if (pooled) byteBuf.release();
             byteBuf = out;
+            out = null;
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
             byteBuf.readerIndex(0);
-            deflater.end();
+            if (out != null && pooled) out.release();
+            deflater.reset();
         }
     }
 
@@ -362,6 +418,12 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
         return this;
     }
 
+    @Override
+    public PacketCustom writeItemStacks(ItemStack[] stacks) {
+        MCDataOutput.super.writeItemStacks(stacks);
+        return this;
+    }
+
     public PacketCustom writeNBTTagCompound(NBTTagCompound compound) {
         ByteBufUtils.writeTag(byteBuf, compound);
         return this;
@@ -473,11 +535,19 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
 
     public FMLProxyPacket toPacket() {
         if (incoming()) throw new IllegalStateException("Tried to write an incoming packet");
+        if (built != null) return built;
 
         if (byteBuf.readableBytes() > 32000 || (type & 0x80) != 0) do_compress();
 
         // FML packet impl returns the whole of the backing array, copy used portion of array to another ByteBuf
-        return new FMLProxyPacket(byteBuf.copy(), channel);
+        if (!pooled) return new FMLProxyPacket(byteBuf.copy(), channel);
+
+        // copy() would allocate from the pool, FML needs an exactly sized array
+        byte[] payload = new byte[byteBuf.readableBytes()];
+        byteBuf.getBytes(byteBuf.readerIndex(), payload);
+        built = new FMLProxyPacket(Unpooled.wrappedBuffer(payload), channel);
+        release();
+        return built;
     }
 
     public void sendToPlayer(EntityPlayer player) {
@@ -502,7 +572,17 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public static void sendToAllAround(Packet packet, double x, double y, double z, double range, int dim) {
-        MinecraftServer.getServer().getConfigurationManager().sendToAllNear(x, y, z, range, dim, packet);
+        ServerConfigurationManager configManager = MinecraftServer.getServer().getConfigurationManager();
+        WorldServer world = DimensionManager.getWorld(dim);
+        // past a certain range looking up every chunk costs more than testing every player
+        if (world == null || !ChunkWatcherIndex.initialised()
+                || ChunkWatcherIndex.chunkArea(x, z, range) > configManager.playerEntityList.size()) {
+            configManager.sendToAllNear(x, y, z, range, dim, packet);
+            return;
+        }
+
+        for (EntityPlayerMP player : ChunkWatcherIndex.getPlayersInRange(world, x, y, z, range))
+            sendToPlayer(packet, player);
     }
 
     public void sendToDimension(int dim) {
@@ -518,16 +598,18 @@ public final class PacketCustom implements MCDataInput, MCDataOutput {
     }
 
     public static void sendToChunk(Packet packet, World world, int chunkX, int chunkZ) {
-        PlayerManager playerManager = ((WorldServer) world).getPlayerManager();
-        for (EntityPlayerMP player : (List<EntityPlayerMP>) MinecraftServer.getServer()
-                .getConfigurationManager().playerEntityList)
-            if (playerManager.isPlayerWatchingChunk(player, chunkX, chunkZ)) sendToPlayer(packet, player);
+        for (EntityPlayerMP player : ChunkWatcherIndex.getWatchers(world, chunkX, chunkZ)) sendToPlayer(packet, player);
+    }
 
-        /*
-         * Commented until forge accepts access tranformer request PlayerInstance p = ((WorldServer)
-         * world).getPlayerManager().getOrCreateChunkWatcher(chunkX, chunkZ, false); if (p != null)
-         * p.sendToAllPlayersWatchingChunk(packet);
-         */
+    public void sendToChunks(World world, Collection<ChunkCoordIntPair> chunks) {
+        sendToChunks(toPacket(), world, chunks);
+    }
+
+    /**
+     * Sends packet once to each player watching any of the chunks
+     */
+    public static void sendToChunks(Packet packet, World world, Collection<ChunkCoordIntPair> chunks) {
+        for (EntityPlayerMP player : ChunkWatcherIndex.getWatchers(world, chunks)) sendToPlayer(packet, player);
     }
 
     public void sendToOps() {
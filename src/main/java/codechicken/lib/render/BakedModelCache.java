@@ -0,0 +1,169 @@
+package codechicken.lib.render;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.minecraft.util.IIcon;
+
+import codechicken.lib.colour.ColourRGBA;
+import codechicken.lib.render.uv.IconTransformation;
+import codechicken.lib.render.uv.UVTransformation;
+import codechicken.lib.vec.Matrix4;
+import codechicken.lib.vec.Transformation;
+
+/**
+ * A bounded LRU cache of models with a transformation, uv transformation and colour multiplier already applied. Blocks
+ * that render the same model with the same handful of transforms every chunk rebuild only pay for the transform math
+ * once, subsequent renders just run the remaining (lighting) operations over a {@link PackedModel}.
+ * <p>
+ * Transformations are compared by their matrix, uv transformations by icon and its current atlas coordinates for
+ * IconTransformation and by identity otherwise, so a texture restitch misses the models baked with the old
+ * coordinates. Models are compared by identity and must not be modified after being cached.
+ */
+public class BakedModelCache {
+
+    public static final BakedModelCache instance = new BakedModelCache(2048);
+
+    private static class Key {
+
+        public final CCModel model;
+        public final double[] matrix;
+        public final Object uv;
+        // the icon's current atlas coordinates, as a restitch moves icons without replacing them
+        public final float[] iconUV;
+        public final int colour;
+        private final int hash;
+
+        public Key(CCModel model, Transformation t, UVTransformation uvt, int colour) {
+            this.model = model;
+            matrix = t == null ? null : matrixOf(t);
+            if (uvt instanceof IconTransformation) {
+                IIcon icon = ((IconTransformation) uvt).icon;
+                uv = icon;
+                iconUV = new float[] { icon.getMinU(), icon.getMaxU(), icon.getMinV(), icon.getMaxV() };
+            } else {
+                uv = uvt;
+                iconUV = null;
+            }
+            this.colour = colour;
+
+            int h = System.identityHashCode(model);
+            h = h * 31 + (matrix == null ? 0 : Arrays.hashCode(matrix));
+            h = h * 31 + (uv == null ? 0 : System.identityHashCode(uv));
+            h = h * 31 + Arrays.hashCode(iconUV);
+            hash = h * 31 + colour;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return hash == k.hash && model == k.model
+                    && uv == k.uv
+                    && Arrays.equals(iconUV, k.iconUV)
+                    && colour == k.colour
+                    && Arrays.equals(matrix, k.matrix);
+        }
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, PackedModel> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BakedModelCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        cache = new LinkedHashMap<Key, PackedModel>(16, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PackedModel> eldest) {
+                return size() > BakedModelCache.this.maxEntries;
+            }
+        };
+    }
+
+    private static double[] matrixOf(Transformation t) {
+        Matrix4 m = new Matrix4();
+        t.apply(m);
+        return new double[] { m.m00, m.m01, m.m02, m.m03, m.m10, m.m11, m.m12, m.m13, m.m20, m.m21, m.m22, m.m23,
+                m.m30, m.m31, m.m32, m.m33 };
+    }
+
+    /**
+     * @param t      The transformation to apply, may be null
+     * @param uvt    The uv transformation to apply, may be null
+     * @param colour A colour multiplier to bake into the colour attribute, -1 for none
+     * @return A packed copy of model with the transformations applied
+     */
+    public PackedModel get(CCModel model, Transformation t, UVTransformation uvt, int colour) {
+        Key key = new Key(model, t, uvt, colour);
+        PackedModel baked;
+        synchronized (cache) {
+            baked = cache.get(key);
+        }
+        if (baked != null) {
+            hits.incrementAndGet();
+            return baked;
+        }
+
+        misses.incrementAndGet();
+        baked = bake(model, t, uvt, colour);
+        synchronized (cache) {
+            PackedModel prev = cache.put(key, baked);
+            if (prev != null) cache.put(key, baked = prev);
+        }
+        return baked;
+    }
+
+    private static PackedModel bake(CCModel model, Transformation t, UVTransformation uvt, int colour) {
+        CCModel copy = model.copy();
+        if (t != null) copy.apply(t);
+        if (uvt != null) copy.apply(uvt);
+        if (colour != -1) {
+            int[] colours = copy.getAttributes(CCRenderState.colourAttrib);
+            if (colours == null) copy.setColour(colour);
+            else for (int i = 0; i < colours.length; i++) colours[i] = ColourRGBA.multiply(colours[i], colour);
+        }
+        return PackedModel.pack(copy);
+    }
+
+    /**
+     * Renders model with t, uvt and colour applied, followed by ops
+     */
+    public void render(CCRenderState state, CCModel model, Transformation t, UVTransformation uvt, int colour,
+            CCRenderState.IVertexOperation... ops) {
+        get(model, t, uvt, colour).render(state, ops);
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
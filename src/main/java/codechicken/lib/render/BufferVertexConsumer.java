@@ -0,0 +1,193 @@
+package codechicken.lib.render;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Writes pipeline output straight into a direct buffer in the Tessellator vertex format (8 ints per vertex: x, y, z, u,
+ * v, colour, normal, brightness). Vertices are staged in a small int array and copied into the buffer in bulk, so each
+ * thread can fill its own buffer without touching Tessellator.instance.
+ */
+public class BufferVertexConsumer implements CCRenderState.IVertexConsumer {
+
+    /**
+     * The size of one vertex in ints
+     */
+    public static final int VERTEX_SIZE = 8;
+    private static final int BATCH_VERTICES = 64;
+    private static final boolean littleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final boolean owned;
+    private final int baseOffset;
+    private ByteBuffer byteBuffer;
+    private IntBuffer intBuffer;
+
+    private final int[] batch = new int[BATCH_VERTICES * VERTEX_SIZE];
+    private int batchIndex;
+    private int vertexCount;
+
+    public double xOffset;
+    public double yOffset;
+    public double zOffset;
+
+    private int normal;
+    private int colour = -1;
+    private int brightness;
+    public boolean hasNormals;
+    public boolean hasColour;
+    public boolean hasBrightness;
+
+    /**
+     * Creates a consumer with its own direct buffer that grows as needed
+     *
+     * @param vertexCapacity The initial capacity in vertices
+     */
+    public BufferVertexConsumer(int vertexCapacity) {
+        owned = true;
+        baseOffset = 0;
+        allocate(Math.max(vertexCapacity, BATCH_VERTICES));
+    }
+
+    /**
+     * Creates a consumer writing into a caller provided direct buffer, starting at its current position. The buffer is
+     * not grown, overflowing it throws a BufferOverflowException
+     */
+    public BufferVertexConsumer(ByteBuffer buffer) {
+        owned = false;
+        baseOffset = buffer.position();
+        byteBuffer = buffer.order(ByteOrder.nativeOrder());
+        intBuffer = byteBuffer.asIntBuffer();
+    }
+
+    private void allocate(int vertices) {
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(vertices * VERTEX_SIZE * 4).order(ByteOrder.nativeOrder());
+        IntBuffer newInts = newBuffer.asIntBuffer();
+        if (intBuffer != null) {
+            intBuffer.flip();
+            newInts.put(intBuffer);
+        }
+        byteBuffer = newBuffer;
+        intBuffer = newInts;
+    }
+
+    private void grow(int vertices) {
+        allocate(Math.max(intBuffer.position() / VERTEX_SIZE + vertices, intBuffer.capacity() / VERTEX_SIZE * 2));
+    }
+
+    /**
+     * Makes room for at least the given number of additional vertices, so a model can be written without resizing
+     */
+    public BufferVertexConsumer ensureCapacity(int vertices) {
+        flush();
+        if (intBuffer.remaining() >= vertices * VERTEX_SIZE) return this;
+        if (!owned) throw new BufferOverflowException();
+
+        grow(vertices);
+        return this;
+    }
+
+    public BufferVertexConsumer setTranslation(double x, double y, double z) {
+        xOffset = x;
+        yOffset = y;
+        zOffset = z;
+        return this;
+    }
+
+    @Override
+    public void writeVertex(CCRenderState state) {
+        if (state.hasNormal) {
+            hasNormals = true;
+            normal = packNormal(state.normal.x, state.normal.y, state.normal.z);
+        }
+        if (state.hasColour) {
+            hasColour = true;
+            colour = packColour(state.colour, state.alphaOverride);
+        }
+        if (state.hasBrightness) {
+            hasBrightness = true;
+            brightness = state.brightness;
+        }
+
+        Vertex5 vert = state.vert;
+        int[] b = batch;
+        int i = batchIndex;
+        b[i] = Float.floatToRawIntBits((float) (vert.vec.x + xOffset));
+        b[i + 1] = Float.floatToRawIntBits((float) (vert.vec.y + yOffset));
+        b[i + 2] = Float.floatToRawIntBits((float) (vert.vec.z + zOffset));
+        b[i + 3] = Float.floatToRawIntBits((float) vert.uv.u);
+        b[i + 4] = Float.floatToRawIntBits((float) vert.uv.v);
+        b[i + 5] = colour;
+        b[i + 6] = normal;
+        b[i + 7] = brightness;
+        batchIndex = i + VERTEX_SIZE;
+        vertexCount++;
+
+        if (batchIndex == b.length) flush();
+    }
+
+    /**
+     * Copies staged vertices into the buffer
+     */
+    public void flush() {
+        if (batchIndex == 0) return;
+
+        if (owned && intBuffer.remaining() < batchIndex) grow(batchIndex / VERTEX_SIZE);
+        intBuffer.put(batch, 0, batchIndex);
+        batchIndex = 0;
+    }
+
+    /**
+     * @return A view of the buffer containing all vertices written so far
+     */
+    public ByteBuffer getBuffer() {
+        flush();
+        ByteBuffer out = byteBuffer.duplicate().order(ByteOrder.nativeOrder());
+        out.limit(baseOffset + intBuffer.position() * 4);
+        out.position(baseOffset);
+        return out;
+    }
+
+    public IntBuffer getIntBuffer() {
+        flush();
+        IntBuffer out = intBuffer.duplicate();
+        out.flip();
+        return out;
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Discards all written vertices and vertex state so the buffer can be reused
+     */
+    public void reset() {
+        intBuffer.clear();
+        batchIndex = 0;
+        vertexCount = 0;
+        colour = -1;
+        normal = brightness = 0;
+        hasNormals = hasColour = hasBrightness = false;
+    }
+
+    /**
+     * Packs an RGBA colour into the byte order the Tessellator uploads
+     */
+    public static int packColour(int rgba, int alphaOverride) {
+        int r = rgba >>> 24;
+        int g = rgba >> 16 & 0xFF;
+        int b = rgba >> 8 & 0xFF;
+        int a = alphaOverride >= 0 ? alphaOverride & 0xFF : rgba & 0xFF;
+        if (littleEndian) return a << 24 | b << 16 | g << 8 | r;
+        return r << 24 | g << 16 | b << 8 | a;
+    }
+
+    public static int packNormal(double x, double y, double z) {
+        byte b0 = (byte) (int) (x * 127);
+        byte b1 = (byte) (int) (y * 127);
+        byte b2 = (byte) (int) (z * 127);
+        return b0 & 0xFF | (b1 & 0xFF) << 8 | (b2 & 0xFF) << 16;
+    }
+}
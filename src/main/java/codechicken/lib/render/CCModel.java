@@ -2,16 +2,13 @@ package codechicken.lib.render;
 
 import static codechicken.lib.vec.Rotation.sideRotations;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -27,33 +24,14 @@ import codechicken.lib.render.uv.UVTransformation;
 import codechicken.lib.render.uv.UVTranslation;
 import codechicken.lib.util.Copyable;
 import codechicken.lib.vec.Cuboid6;
-import codechicken.lib.vec.RedundantTransformation;
 import codechicken.lib.vec.Transformation;
 import codechicken.lib.vec.TransformationList;
 import codechicken.lib.vec.Vector3;
+import codechicken.lib.vec.Vector3Index;
 
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
 
-    private static class PositionNormalEntry {
-
-        public Vector3 pos;
-        public LinkedList<Vector3> normals = new LinkedList<Vector3>();
-
-        public PositionNormalEntry(Vector3 position) {
-            pos = position;
-        }
-
-        public boolean positionEqual(Vector3 v) {
-            return pos.x == v.x && pos.y == v.y && pos.z == v.z;
-        }
-
-        public PositionNormalEntry addNormal(Vector3 normal) {
-            normals.add(normal);
-            return this;
-        }
-    }
-
     public final int vertexMode;
     public final int vp;
     public Vertex5[] verts;
@@ -374,26 +352,38 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
      * @return The model
      */
     public CCModel smoothNormals() {
-        ArrayList<PositionNormalEntry> map = new ArrayList<PositionNormalEntry>();
+        return smoothNormals(0);
+    }
+
+    /**
+     * Averages all normals at the same position to produce a smooth lighting effect. Positions within weldTolerance on
+     * every axis of the first vertex seen at a position count as the same position.
+     *
+     * @return The model
+     */
+    public CCModel smoothNormals(double weldTolerance) {
         Vector3[] normals = normals();
-        nextvert: for (int k = 0; k < verts.length; k++) {
-            Vector3 vec = verts[k].vec;
-            for (PositionNormalEntry e : map) if (e.positionEqual(vec)) {
-                e.addNormal(normals[k]);
-                continue nextvert;
-            }
+        Vector3Index positions = new Vector3Index(weldTolerance);
+        int[] group = new int[verts.length];
+        for (int k = 0; k < verts.length; k++) group[k] = positions.add(verts[k].vec);
 
-            map.add(new PositionNormalEntry(vec).addNormal(normals[k]));
+        int groups = positions.size();
+        double[] sums = new double[groups * 3];
+        int[] counts = new int[groups];
+        for (int k = 0; k < verts.length; k++) {
+            int g = group[k];
+            sums[g * 3] += normals[k].x;
+            sums[g * 3 + 1] += normals[k].y;
+            sums[g * 3 + 2] += normals[k].z;
+            counts[g]++;
         }
 
-        for (PositionNormalEntry e : map) {
-            if (e.normals.size() <= 1) continue;
-
-            Vector3 new_n = new Vector3();
-            for (Vector3 n : e.normals) new_n.add(n);
+        Vector3 new_n = new Vector3();
+        for (int k = 0; k < verts.length; k++) {
+            int g = group[k];
+            if (counts[g] <= 1) continue;
 
-            new_n.normalize();
-            for (Vector3 n : e.normals) n.set(new_n);
+            normals[k].set(new_n.set(sums[g * 3], sums[g * 3 + 1], sums[g * 3 + 2]).normalize());
         }
 
         return this;
@@ -513,9 +503,16 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
     private static final Pattern uvwPattern = Pattern.compile("vt(?: ([\\d\\.+-]+))+");
     private static final Pattern normalPattern = Pattern.compile("vn(?: ([\\d\\.+-]+))+");
     private static final Pattern polyPattern = Pattern.compile("f(?: ((?:\\d*)(?:/\\d*)?(?:/\\d*)?))+");
+    /**
+     * @deprecated Not thread safe and no longer used by the obj parser
+     */
+    @Deprecated
     public static final Matcher vertMatcher = vertPattern.matcher("");
+    @Deprecated
     public static final Matcher uvwMatcher = uvwPattern.matcher("");
+    @Deprecated
     public static final Matcher normalMatcher = normalPattern.matcher("");
+    @Deprecated
     public static final Matcher polyMatcher = polyPattern.matcher("");
 
     /**
@@ -529,73 +526,7 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
      */
     public static Map<String, CCModel> parseObjModels(InputStream input, int vertexMode, Transformation coordSystem)
             throws IOException {
-        if (coordSystem == null) coordSystem = new RedundantTransformation();
-        int vp = vertexMode == 7 ? 4 : 3;
-
-        HashMap<String, CCModel> modelMap = new HashMap<String, CCModel>();
-        ArrayList<Vector3> verts = new ArrayList<Vector3>();
-        ArrayList<Vector3> uvs = new ArrayList<Vector3>();
-        ArrayList<Vector3> normals = new ArrayList<Vector3>();
-        ArrayList<int[]> polys = new ArrayList<int[]>();
-        String modelName = "unnamed";
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-
-        String line;
-        while ((line = reader.readLine()) != null) {
-            line = line.replaceAll("\\s+", " ").trim();
-            if (line.startsWith("#") || line.length() == 0) continue;
-
-            if (line.startsWith("v ")) {
-                assertMatch(vertMatcher, line);
-                double[] values = parseDoubles(line.substring(2), " ");
-                illegalAssert(values.length >= 3, "Vertices must have x, y and z components");
-                Vector3 vert = new Vector3(values[0], values[1], values[2]);
-                coordSystem.apply(vert);
-                verts.add(vert);
-                continue;
-            }
-            if (line.startsWith("vt ")) {
-                assertMatch(uvwMatcher, line);
-                double[] values = parseDoubles(line.substring(3), " ");
-                illegalAssert(values.length >= 2, "Tex Coords must have u, and v components");
-                uvs.add(new Vector3(values[0], 1 - values[1], 0));
-                continue;
-            }
-            if (line.startsWith("vn ")) {
-                assertMatch(normalMatcher, line);
-                double[] values = parseDoubles(line.substring(3), " ");
-                illegalAssert(values.length >= 3, "Normals must have x, y and z components");
-                Vector3 norm = new Vector3(values[0], values[1], values[2]).normalize();
-                coordSystem.applyN(norm);
-                normals.add(norm);
-                continue;
-            }
-            if (line.startsWith("f ")) {
-                assertMatch(polyMatcher, line);
-                String[] av = line.substring(2).split(" ");
-                illegalAssert(av.length >= 3, "Polygons must have at least 3 vertices");
-                int[][] polyVerts = new int[av.length][3];
-                for (int i = 0; i < av.length; i++) {
-                    String[] as = av[i].split("/");
-                    for (int p = 0; p < as.length; p++)
-                        if (as[p].length() > 0) polyVerts[i][p] = Integer.parseInt(as[p]);
-                }
-                if (vp == 3) triangulate(polys, polyVerts);
-                else quadulate(polys, polyVerts);
-            }
-            if (line.startsWith("g ")) {
-                if (!polys.isEmpty()) {
-                    modelMap.put(modelName, createModel(verts, uvs, normals, vertexMode, polys));
-                    polys.clear();
-                }
-                modelName = line.substring(2);
-            }
-        }
-
-        if (!polys.isEmpty()) modelMap.put(modelName, createModel(verts, uvs, normals, vertexMode, polys));
-
-        return modelMap;
+        return new ObjParser(vertexMode, coordSystem).parse(input);
     }
 
     public static void triangulate(List<int[]> polys, int[][] polyVerts) {
@@ -693,24 +624,24 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
         return model;
     }
 
-    private static <T> int addIndex(List<T> list, T elem) {
-        int i = list.indexOf(elem) + 1;
-        if (i == 0) {
-            list.add(elem);
-            i = list.size();
-        }
-        return i;
-    }
-
     private static String clean(double d) {
         return d == (int) d ? Integer.toString((int) d) : Double.toString(d);
     }
 
     public static void exportObj(Map<String, CCModel> models, PrintWriter p) {
-        List<Vector3> verts = new ArrayList<Vector3>();
-        List<UV> uvs = new ArrayList<UV>();
-        List<Vector3> normals = new ArrayList<Vector3>();
-        List<int[]> polys = new ArrayList<int[]>();
+        exportObj(models, p, 0);
+    }
+
+    /**
+     * @param weldTolerance Positions, uvs and normals within this distance of an earlier one on every axis share its
+     *                      index
+     */
+    public static void exportObj(Map<String, CCModel> models, PrintWriter p, double weldTolerance) {
+        Vector3Index verts = new Vector3Index(weldTolerance);
+        Vector3Index uvs = new Vector3Index(weldTolerance);
+        Vector3Index normals = new Vector3Index(weldTolerance);
+        Vector3 vec = new Vector3();
+        int[] polys = new int[0];
         for (Map.Entry<String, CCModel> e : models.entrySet()) {
             p.println("g " + e.getKey());
             CCModel m = e.getValue();
@@ -718,45 +649,44 @@ public class CCModel implements CCRenderState.IVertexSource, Copyable<CCModel> {
             int vStart = verts.size();
             int uStart = uvs.size();
             int nStart = normals.size();
-            boolean hasNormals = m.normals() != null;
-            polys.clear();
+            Vector3[] modelNormals = m.normals();
+            boolean hasNormals = modelNormals != null;
+            if (polys.length < m.verts.length * 3) polys = new int[m.verts.length * 3];
 
             for (int i = 0; i < m.verts.length; i++) {
-                int[] ia = new int[hasNormals ? 3 : 2];
-                ia[0] = addIndex(verts, m.verts[i].vec);
-                ia[1] = addIndex(uvs, m.verts[i].uv);
-                if (hasNormals) ia[2] = addIndex(normals, m.normals()[i]);
-                polys.add(ia);
+                Vertex5 vert = m.verts[i];
+                polys[i * 3] = verts.add(vert.vec) + 1;
+                polys[i * 3 + 1] = uvs.add(vert.uv.u, vert.uv.v, 0) + 1;
+                if (hasNormals) polys[i * 3 + 2] = normals.add(modelNormals[i]) + 1;
             }
 
             if (vStart < verts.size()) {
                 p.println();
                 for (int i = vStart; i < verts.size(); i++) {
-                    Vector3 v = verts.get(i);
+                    Vector3 v = verts.get(i, vec);
                     p.format("v %s %s %s\n", clean(v.x), clean(v.y), clean(v.z));
                 }
             }
             if (uStart < uvs.size()) {
                 p.println();
                 for (int i = uStart; i < uvs.size(); i++) {
-                    UV uv = uvs.get(i);
-                    p.format("vt %s %s\n", clean(uv.u), clean(uv.v));
+                    Vector3 uv = uvs.get(i, vec);
+                    p.format("vt %s %s\n", clean(uv.x), clean(uv.y));
                 }
             }
             if (nStart < normals.size()) {
                 p.println();
                 for (int i = nStart; i < normals.size(); i++) {
-                    Vector3 n = normals.get(i);
+                    Vector3 n = normals.get(i, vec);
                     p.format("vn %s %s %s\n", clean(n.x), clean(n.y), clean(n.z));
                 }
             }
 
             p.println();
-            for (int i = 0; i < polys.size(); i++) {
+            for (int i = 0; i < m.verts.length; i++) {
                 if (i % m.vp == 0) p.format("f");
-                int[] ia = polys.get(i);
-                if (hasNormals) p.format(" %d/%d/%d", ia[0], ia[1], ia[2]);
-                else p.format(" %d/%d", ia[0], ia[1]);
+                if (hasNormals) p.format(" %d/%d/%d", polys[i * 3], polys[i * 3 + 1], polys[i * 3 + 2]);
+                else p.format(" %d/%d", polys[i * 3], polys[i * 3 + 1]);
                 if (i % m.vp == m.vp - 1) p.println();
             }
         }
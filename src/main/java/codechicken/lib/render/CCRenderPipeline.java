@@ -1,6 +1,7 @@
 package codechicken.lib.render;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import codechicken.lib.render.CCRenderState.IVertexOperation;
@@ -73,6 +74,11 @@ public class CCRenderPipeline {
     private final ArrayList<PipelineNode> nodes = new ArrayList<>();
     private final ArrayList<IVertexOperation> sorted = new ArrayList<>();
     private PipelineNode loading;
+    private boolean[] activeAttribs = new boolean[0];
+
+    private IVertexOperation[] opArray = new IVertexOperation[0];
+    private Class<?>[] shapeKey;
+    private PipelineCompiler.CompiledPipeline compiled;
 
     public void setPipeline(IVertexOperation... ops) {
         this.ops.clear();
@@ -86,9 +92,10 @@ public class CCRenderPipeline {
     }
 
     private void unbuild() {
-        for (int i = 0; i < attribs.size(); i++) attribs.get(i).active = false;
+        for (int i = 0; i < attribs.size(); i++) setActive(attribs.get(i), false);
         attribs.clear();
         sorted.clear();
+        compiled = null;
     }
 
     public void rebuild() {
@@ -109,10 +116,19 @@ public class CCRenderPipeline {
             if (loaded) loading.op = op;
 
             if (op instanceof VertexAttribute) if (loaded) attribs.add((VertexAttribute) op);
-            else((VertexAttribute) op).active = false;
+            else setActive((VertexAttribute) op, false);
         }
 
         for (int i = 0; i < nodes.size(); i++) nodes.get(i).add();
+
+        if (PipelineCompiler.enabled) compile();
+    }
+
+    private void compile() {
+        if (opArray.length != sorted.size()) opArray = new IVertexOperation[sorted.size()];
+        sorted.toArray(opArray);
+        shapeKey = PipelineCompiler.shapeOf(renderState.model, opArray, opArray.length, shapeKey);
+        compiled = PipelineCompiler.lookup(shapeKey);
     }
 
     public void addRequirement(int opRef) {
@@ -125,16 +141,43 @@ public class CCRenderPipeline {
     }
 
     public void addAttribute(VertexAttribute attrib) {
-        if (!attrib.active) {
+        if (!isActive(attrib)) {
             ops.add(attrib);
-            attrib.active = true;
+            setActive(attrib, true);
         }
     }
 
+    /**
+     * @return True if the attribute is part of this pipeline
+     */
+    public boolean isActive(VertexAttribute<?> attrib) {
+        return attrib.attributeIndex < activeAttribs.length && activeAttribs[attrib.attributeIndex];
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setActive(VertexAttribute<?> attrib, boolean active) {
+        if (attrib.attributeIndex >= activeAttribs.length)
+            activeAttribs = Arrays.copyOf(activeAttribs, CCRenderState.attributeCount());
+        activeAttribs[attrib.attributeIndex] = active;
+        attrib.active = active; // legacy readers only, racy between threads
+    }
+
     public void operate() {
         for (int i = 0; i < sorted.size(); i++) sorted.get(i).operate(renderState);
     }
 
+    /**
+     * Runs the vertex loop through the generated class for this pipeline shape, if one has been compiled
+     *
+     * @return False if the pipeline is not compiled and the caller must run the loop itself
+     */
+    public boolean renderCompiled() {
+        if (compiled == null) return false;
+
+        compiled.render(renderState, opArray);
+        return true;
+    }
+
     public PipelineBuilder builder() {
         ops.clear();
         return builder;
@@ -1,6 +1,8 @@
 package codechicken.lib.render;
 
-import java.util.ArrayList;
+import java.lang.reflect.Array;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.OpenGlHelper;
@@ -38,14 +40,14 @@ public class CCRenderState {
         return instances.get();
     }
 
-    private static int nextOperationIndex;
+    private static final AtomicInteger nextOperationIndex = new AtomicInteger();
 
     public static int registerOperation() {
-        return nextOperationIndex++;
+        return nextOperationIndex.getAndIncrement();
     }
 
     public static int operationCount() {
-        return nextOperationIndex;
+        return nextOperationIndex.get();
     }
 
     /**
@@ -87,9 +89,9 @@ public class CCRenderState {
         int operationID();
     }
 
-    private static ArrayList<VertexAttribute<?>> vertexAttributes = new ArrayList<>();
+    private static final CopyOnWriteArrayList<VertexAttribute<?>> vertexAttributes = new CopyOnWriteArrayList<>();
 
-    private static int registerVertexAttribute(VertexAttribute<?> attr) {
+    private static synchronized int registerVertexAttribute(VertexAttribute<?> attr) {
         vertexAttributes.add(attr);
         return vertexAttributes.size() - 1;
     }
@@ -98,6 +100,10 @@ public class CCRenderState {
         return vertexAttributes.get(index);
     }
 
+    public static int attributeCount() {
+        return vertexAttributes.size();
+    }
+
     /**
      * Management class for a vertex attrute such as colour, normal etc This class should handle the loading of the
      * attrute from an array provided by IVertexSource.getAttributes or the computation of this attrute from others
@@ -111,7 +117,10 @@ public class CCRenderState {
         /**
          * Set to true when the attrute is part of the pipeline. Should only be managed by CCRenderState when
          * constructing the pipeline
+         *
+         * @deprecated Shared between all threads, use {@link CCRenderPipeline#isActive} on the pipeline of the state
          */
+        @Deprecated
         public boolean active = false;
 
         /**
@@ -136,14 +145,24 @@ public class CCRenderState {
 
     public static <T> T copyOf(VertexAttribute<T> attr, T src, int length) {
         T dst = attr.newArray(length);
-        arrayCopy(src, 0, dst, 0, ((Object[]) src).length);
+        arrayCopy(src, 0, dst, 0, Math.min(Array.getLength(src), length));
         return dst;
     }
 
     public interface IVertexSource {
 
+        /**
+         * @return The vertices of this source, or null if prepareVertex loads each vertex into the state
+         */
         Vertex5[] getVertices();
 
+        /**
+         * @return The number of vertices in this source. Must be overridden if getVertices returns null
+         */
+        default int getVertexCount() {
+            return getVertices().length;
+        }
+
         /**
          * Gets an array of vertex attrutes
          *
@@ -169,9 +188,22 @@ public class CCRenderState {
         }
     }
 
-    public static VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>() {
+    /**
+     * Receives finished vertices in place of the Tessellator
+     */
+    public interface IVertexConsumer {
+
+        /**
+         * Called once per vertex after the pipeline has run, with the vertex outputs of state set
+         */
+        void writeVertex(CCRenderState state);
+    }
 
-        private Vector3[] normalRef;
+    /*
+     * The built in attributes are shared between threads, so the references they load from the model are kept in the
+     * (thread local) state
+     */
+    public static VertexAttribute<Vector3[]> normalAttrib = new VertexAttribute<>() {
 
         @Override
         public Vector3[] newArray(int length) {
@@ -180,8 +212,9 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            normalRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return normalRef != null;
+            state.normalRef = state.model.getAttributes(this);
+            state.packedNormalRef = state.model instanceof PackedModel ? ((PackedModel) state.model).normals : null;
+            if (state.model.hasAttribute(this)) return state.normalRef != null || state.packedNormalRef != null;
 
             if (state.model.hasAttribute(sideAttrib)) {
                 state.pipeline.addDependency(sideAttrib);
@@ -193,14 +226,16 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
-            if (normalRef != null) state.setNormalInstance(normalRef[state.vertexIndex]);
-            else state.setNormalInstance(Rotation.axes[state.side]);
+            if (state.normalRef != null) state.setNormalInstance(state.normalRef[state.vertexIndex]);
+            else if (state.packedNormalRef != null) {
+                float[] n = state.packedNormalRef;
+                int i = state.vertexIndex * 3;
+                state.setNormalInstance(n[i], n[i + 1], n[i + 2]);
+            } else state.setNormalInstance(Rotation.axes[state.side]);
         }
     };
     public static VertexAttribute<int[]> colourAttrib = new VertexAttribute<>() {
 
-        private int[] colourRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -208,21 +243,19 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            colourRef = state.model.getAttributes(this);
-            return colourRef != null || !state.model.hasAttribute(this);
+            state.colourRef = state.model.getAttributes(this);
+            return state.colourRef != null || !state.model.hasAttribute(this);
         }
 
         @Override
         public void operate(CCRenderState state) {
-            if (colourRef != null)
-                state.setColourInstance(ColourRGBA.multiply(state.baseColour, colourRef[state.vertexIndex]));
+            if (state.colourRef != null)
+                state.setColourInstance(ColourRGBA.multiply(state.baseColour, state.colourRef[state.vertexIndex]));
             else state.setColourInstance(state.baseColour);
         }
     };
     public static VertexAttribute<int[]> lightingAttrib = new VertexAttribute<>() {
 
-        private int[] colourRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -232,8 +265,8 @@ public class CCRenderState {
         public boolean load(CCRenderState state) {
             if (!state.computeLighting || !state.useColour || !state.model.hasAttribute(this)) return false;
 
-            colourRef = state.model.getAttributes(this);
-            if (colourRef != null) {
+            state.lightingRef = state.model.getAttributes(this);
+            if (state.lightingRef != null) {
                 state.pipeline.addDependency(colourAttrib);
                 return true;
             }
@@ -242,13 +275,11 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
-            state.setColourInstance(ColourRGBA.multiply(state.colour, colourRef[state.vertexIndex]));
+            state.setColourInstance(ColourRGBA.multiply(state.colour, state.lightingRef[state.vertexIndex]));
         }
     };
     public static VertexAttribute<int[]> sideAttrib = new VertexAttribute<>() {
 
-        private int[] sideRef;
-
         @Override
         public int[] newArray(int length) {
             return new int[length];
@@ -256,8 +287,8 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            sideRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return sideRef != null;
+            state.sideRef = state.model.getAttributes(this);
+            if (state.model.hasAttribute(this)) return state.sideRef != null;
 
             state.pipeline.addDependency(normalAttrib);
             return true;
@@ -265,7 +296,7 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
-            if (sideRef != null) state.side = sideRef[state.vertexIndex];
+            if (state.sideRef != null) state.side = state.sideRef[state.vertexIndex];
             else state.side = CCModel.findSide(state.normal);
         }
     };
@@ -274,10 +305,6 @@ public class CCRenderState {
      */
     public static VertexAttribute<LC[]> lightCoordAttrib = new VertexAttribute<>() {
 
-        private LC[] lcRef;
-        private final Vector3 vec = new Vector3(); // for computation
-        private final Vector3 pos = new Vector3();
-
         @Override
         public LC[] newArray(int length) {
             return new LC[length];
@@ -285,10 +312,13 @@ public class CCRenderState {
 
         @Override
         public boolean load(CCRenderState state) {
-            lcRef = state.model.getAttributes(this);
-            if (state.model.hasAttribute(this)) return lcRef != null;
+            state.lcRef = state.model.getAttributes(this);
+            state.packedLcRef = state.model instanceof PackedModel && ((PackedModel) state.model).lcSides != null
+                    ? (PackedModel) state.model
+                    : null;
+            if (state.model.hasAttribute(this)) return state.lcRef != null || state.packedLcRef != null;
 
-            pos.set(state.lightMatrix.pos.x, state.lightMatrix.pos.y, state.lightMatrix.pos.z);
+            state.lcPos.set(state.lightMatrix.pos.x, state.lightMatrix.pos.y, state.lightMatrix.pos.z);
             state.pipeline.addDependency(sideAttrib);
             state.pipeline.addRequirement(Transformation.operationIndex);
             return true;
@@ -296,8 +326,12 @@ public class CCRenderState {
 
         @Override
         public void operate(CCRenderState state) {
-            if (lcRef != null) state.lc.set(lcRef[state.vertexIndex]);
-            else state.lc.compute(vec.set(state.vert.vec).sub(pos), state.side);
+            if (state.lcRef != null) state.lc.set(state.lcRef[state.vertexIndex]);
+            else if (state.packedLcRef != null) {
+                int i = state.vertexIndex;
+                float[] w = state.packedLcRef.lcWeights;
+                state.lc.set(state.packedLcRef.lcSides[i], w[i * 4], w[i * 4 + 1], w[i * 4 + 2], w[i * 4 + 3]);
+            } else state.lc.compute(state.lcVec.set(state.vert.vec).sub(state.lcPos), state.side);
         }
     };
 
@@ -315,6 +349,10 @@ public class CCRenderState {
     public boolean computeLighting;
     public boolean useColour;
     public LightMatrix lightMatrix = new LightMatrix();
+    /**
+     * If set, vertices are written here instead of Tessellator.instance
+     */
+    public IVertexConsumer vertexConsumer;
 
     // vertex outputs
     public Vertex5 vert = new Vertex5();
@@ -331,6 +369,17 @@ public class CCRenderState {
     public int side;
     public LC lc = new LC();
 
+    // references loaded by the built in attributes
+    private Vector3[] normalRef;
+    private float[] packedNormalRef;
+    private int[] colourRef;
+    private int[] lightingRef;
+    private int[] sideRef;
+    private LC[] lcRef;
+    private PackedModel packedLcRef;
+    private final Vector3 lcVec = new Vector3(); // for computation
+    private final Vector3 lcPos = new Vector3();
+
     public static void reset() {
         instance().resetInstance();
     }
@@ -376,7 +425,7 @@ public class CCRenderState {
     }
 
     public void setModelInstance(IVertexSource source) {
-        setModelInstance(source, 0, source.getVertices().length);
+        setModelInstance(source, 0, source.getVertexCount());
     }
 
     @Deprecated
@@ -415,10 +464,12 @@ public class CCRenderState {
     }
 
     public void renderInstance() {
+        if (pipeline.renderCompiled()) return;
+
         Vertex5[] verts = model.getVertices();
         for (vertexIndex = firstVertexIndex; vertexIndex < lastVertexIndex; vertexIndex++) {
             model.prepareVertex(this);
-            vert.set(verts[vertexIndex]);
+            if (verts != null) vert.set(verts[vertexIndex]);
             runPipelineInstance();
             writeVertInstance();
         }
@@ -439,6 +490,11 @@ public class CCRenderState {
     }
 
     public void writeVertInstance() {
+        if (vertexConsumer != null) {
+            vertexConsumer.writeVertex(this);
+            return;
+        }
+
         if (hasNormal) Tessellator.instance.setNormal((float) normal.x, (float) normal.y, (float) normal.z);
         if (hasColour) Tessellator.instance.setColorRGBA(
                 colour >>> 24,
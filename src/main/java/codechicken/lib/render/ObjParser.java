@@ -0,0 +1,403 @@
+package codechicken.lib.render;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import codechicken.lib.vec.RedundantTransformation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * Reads WaveFront Obj files a line at a time into primitive arrays, without regexes or intermediate strings. Each
+ * instance parses a single file, so separate files can be parsed from different threads. Groups are turned into
+ * CCModels in parallel once the whole file has been read.
+ */
+public class ObjParser {
+
+    /**
+     * Files with fewer polygon vertices than this build their groups on the calling thread
+     */
+    public static int parallelThreshold = 4096;
+
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private static class Group {
+
+        public final String name;
+        /**
+         * vert, uv, normal indices (1 based, 0 for none) for each polygon vertex
+         */
+        public int[] polys = new int[48];
+        public int size;
+
+        public Group(String name) {
+            this.name = name;
+        }
+
+        public void add(int[] polyVerts, int i) {
+            if (size + 3 > polys.length) polys = Arrays.copyOf(polys, polys.length * 2);
+            polys[size++] = polyVerts[i * 3];
+            polys[size++] = polyVerts[i * 3 + 1];
+            polys[size++] = polyVerts[i * 3 + 2];
+        }
+
+        public int vertexCount() {
+            return size / 3;
+        }
+    }
+
+    private final int vertexMode;
+    private final int vp;
+    private final Transformation coordSystem;
+
+    private double[] verts = new double[96];
+    private int vertCount;
+    private double[] uvs = new double[64];
+    private int uvCount;
+    private double[] normals = new double[96];
+    private int normalCount;
+    private final ArrayList<Group> groups = new ArrayList<>();
+
+    private final Vector3 vec = new Vector3();
+    private final double[] values = new double[4];
+    private int[] polyVerts = new int[12];
+
+    private Reader reader;
+    private final char[] buf = new char[8192];
+    private int bufPos;
+    private int bufLen;
+    private char[] line = new char[256];
+    private int lineLen;
+    private int pos;
+
+    /**
+     * @param vertexMode  The vertex mode to create the model for (GL_TRIANGLES or GL_QUADS)
+     * @param coordSystem The cooridnate system transformation to apply, may be null
+     */
+    public ObjParser(int vertexMode, Transformation coordSystem) {
+        this.vertexMode = vertexMode;
+        vp = vertexMode == 7 ? 4 : 3;
+        this.coordSystem = coordSystem == null ? new RedundantTransformation() : coordSystem;
+    }
+
+    /**
+     * @return A map of group names to models
+     */
+    public Map<String, CCModel> parse(InputStream input) throws IOException {
+        reader = new InputStreamReader(input);
+        Group group = new Group("unnamed");
+        while (readLine()) {
+            pos = 0;
+            skipWhitespace();
+            if (pos == lineLen || line[pos] == '#') continue;
+
+            int start = pos;
+            skipToken();
+            int len = pos - start;
+            skipWhitespace();
+            if (pos == lineLen) continue;
+
+            if (len == 1 && line[start] == 'v') {
+                int n = readValues();
+                illegalAssert(n >= 3, "Vertices must have x, y and z components");
+                coordSystem.apply(vec.set(values[0], values[1], values[2]));
+                addVert(vec);
+            } else if (len == 2 && line[start] == 'v' && line[start + 1] == 't') {
+                int n = readValues();
+                illegalAssert(n >= 2, "Tex Coords must have u, and v components");
+                addUV(values[0], 1 - values[1]);
+            } else if (len == 2 && line[start] == 'v' && line[start + 1] == 'n') {
+                int n = readValues();
+                illegalAssert(n >= 3, "Normals must have x, y and z components");
+                coordSystem.applyN(vec.set(values[0], values[1], values[2]).normalize());
+                addNormal(vec);
+            } else if (len == 1 && line[start] == 'f') {
+                int n = readPolygon();
+                illegalAssert(n >= 3, "Polygons must have at least 3 vertices");
+                if (vp == 3) triangulate(group, n);
+                else quadulate(group, n);
+            } else if (len == 1 && line[start] == 'g') {
+                if (group.size > 0) groups.add(group);
+                group = new Group(readName());
+            }
+        }
+        if (group.size > 0) groups.add(group);
+
+        return buildModels();
+    }
+
+    private Map<String, CCModel> buildModels() {
+        CCModel[] models = new CCModel[groups.size()];
+        int total = 0;
+        for (Group g : groups) total += g.vertexCount();
+
+        IntStream indices = IntStream.range(0, models.length);
+        if (total >= parallelThreshold) indices = indices.parallel();
+        indices.forEach(i -> models[i] = createModel(groups.get(i)));
+
+        // later groups with the same name replace earlier ones
+        HashMap<String, CCModel> modelMap = new HashMap<String, CCModel>();
+        for (int i = 0; i < models.length; i++) modelMap.put(groups.get(i).name, models[i]);
+        return modelMap;
+    }
+
+    private CCModel createModel(Group group) {
+        int count = group.vertexCount();
+        if (count < vp || count % vp != 0)
+            throw new IllegalArgumentException("Invalid number of vertices for model: " + count);
+
+        int[] polys = group.polys;
+        boolean hasNormals = polys[2] > 0;
+        CCModel model = CCModel.newModel(vertexMode, count);
+        Vector3[] modelNormals = hasNormals ? model.getOrAllocate(CCRenderState.normalAttrib) : null;
+
+        for (int i = 0; i < count; i++) {
+            int v = polys[i * 3] - 1;
+            int t = polys[i * 3 + 1] - 1;
+            int n = polys[i * 3 + 2] - 1;
+            if (n >= 0 != hasNormals) throw new IllegalArgumentException("Normals are an all or nothing deal here.");
+            checkIndex(v, vertCount);
+
+            model.verts[i] = t < 0 ? new Vertex5(verts[v * 3], verts[v * 3 + 1], verts[v * 3 + 2], 0, 0)
+                    : new Vertex5(
+                            verts[v * 3],
+                            verts[v * 3 + 1],
+                            verts[v * 3 + 2],
+                            uvs[checkIndex(t, uvCount) * 2],
+                            uvs[t * 2 + 1]);
+            if (hasNormals) modelNormals[i] = new Vector3(
+                    normals[checkIndex(n, normalCount) * 3],
+                    normals[n * 3 + 1],
+                    normals[n * 3 + 2]);
+        }
+
+        return model;
+    }
+
+    private static int checkIndex(int index, int count) {
+        if (index >= count) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        return index;
+    }
+
+    private void triangulate(Group group, int n) {
+        for (int i = 2; i < n; i++) {
+            group.add(polyVerts, 0);
+            group.add(polyVerts, i);
+            group.add(polyVerts, i - 1);
+        }
+    }
+
+    private void quadulate(Group group, int n) {
+        if (n == 4) {
+            group.add(polyVerts, 0);
+            group.add(polyVerts, 3);
+            group.add(polyVerts, 2);
+            group.add(polyVerts, 1);
+        } else {
+            for (int i = 2; i < n; i++) {
+                group.add(polyVerts, 0);
+                group.add(polyVerts, i);
+                group.add(polyVerts, i - 1);
+                group.add(polyVerts, i - 1);
+            }
+        }
+    }
+
+    private void addVert(Vector3 v) {
+        if (vertCount * 3 == verts.length) verts = Arrays.copyOf(verts, verts.length * 2);
+        verts[vertCount * 3] = v.x;
+        verts[vertCount * 3 + 1] = v.y;
+        verts[vertCount * 3 + 2] = v.z;
+        vertCount++;
+    }
+
+    private void addUV(double u, double v) {
+        if (uvCount * 2 == uvs.length) uvs = Arrays.copyOf(uvs, uvs.length * 2);
+        uvs[uvCount * 2] = u;
+        uvs[uvCount * 2 + 1] = v;
+        uvCount++;
+    }
+
+    private void addNormal(Vector3 v) {
+        if (normalCount * 3 == normals.length) normals = Arrays.copyOf(normals, normals.length * 2);
+        normals[normalCount * 3] = v.x;
+        normals[normalCount * 3 + 1] = v.y;
+        normals[normalCount * 3 + 2] = v.z;
+        normalCount++;
+    }
+
+    /**
+     * Reads the next line into {@link #line}, without the line terminator
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine() throws IOException {
+        lineLen = 0;
+        while (true) {
+            if (bufPos == bufLen) {
+                bufLen = reader.read(buf, 0, buf.length);
+                bufPos = 0;
+                if (bufLen <= 0) {
+                    bufLen = 0;
+                    return lineLen > 0;
+                }
+            }
+
+            char c = buf[bufPos++];
+            if (c == '\n') return true;
+            if (c == '\r') continue;
+
+            if (lineLen == line.length) line = Arrays.copyOf(line, line.length * 2);
+            line[lineLen++] = c;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == 0x0B;
+    }
+
+    private void skipWhitespace() {
+        while (pos < lineLen && isWhitespace(line[pos])) pos++;
+    }
+
+    private void skipToken() {
+        while (pos < lineLen && !isWhitespace(line[pos])) pos++;
+    }
+
+    /**
+     * Reads up to 4 numbers into {@link #values}, checking that every remaining token is a number
+     *
+     * @return The number of values on the line
+     */
+    private int readValues() {
+        int n = 0;
+        while (true) {
+            skipWhitespace();
+            if (pos == lineLen) return n;
+
+            double d = readDouble();
+            if (n < values.length) values[n] = d;
+            n++;
+        }
+    }
+
+    private double readDouble() {
+        int start = pos;
+        skipToken();
+        try {
+            return parseDouble(line, start, pos);
+        } catch (NumberFormatException e) {
+            throw malformed();
+        }
+    }
+
+    /**
+     * Parses chars[start, end) to the same value as {@link Double#parseDouble}, without creating a String for plain
+     * decimals. Only digits, signs, '.', 'e' and 'E' are accepted.
+     */
+    static double parseDouble(char[] chars, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+')) negative = chars[pos++] == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean simple = true;
+        boolean any = false;
+        for (; pos < end; pos++) {
+            char c = chars[pos];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    if (point) fractionDigits++;
+                } else {
+                    simple = false;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c == 'e' || c == 'E' || c == '+' || c == '-' || c == '.') {
+                simple = false;
+            } else {
+                throw new NumberFormatException(new String(chars, start, end - start));
+            }
+        }
+
+        // values exactly representable as mantissa / 10^n round the same as Double.parseDouble
+        if (simple && any && mantissa < 1L << 53 && fractionDigits < POW10.length) {
+            double d = mantissa / POW10[fractionDigits];
+            return negative ? -d : d;
+        }
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    /**
+     * Reads the v/vt/vn indices of each polygon vertex into {@link #polyVerts}
+     *
+     * @return The number of vertices in the polygon
+     */
+    private int readPolygon() {
+        int n = 0;
+        while (true) {
+            skipWhitespace();
+            if (pos == lineLen) return n;
+
+            if ((n + 1) * 3 > polyVerts.length) polyVerts = Arrays.copyOf(polyVerts, polyVerts.length * 2);
+            int component = 0;
+            int value = 0;
+            polyVerts[n * 3] = polyVerts[n * 3 + 1] = polyVerts[n * 3 + 2] = 0;
+            for (; pos < lineLen && !isWhitespace(line[pos]); pos++) {
+                char c = line[pos];
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                } else if (c == '/' && component < 2) {
+                    polyVerts[n * 3 + component++] = value;
+                    value = 0;
+                } else {
+                    throw malformed();
+                }
+            }
+            polyVerts[n * 3 + component] = value;
+            n++;
+        }
+    }
+
+    /**
+     * @return The rest of the line with runs of whitespace collapsed to single spaces
+     */
+    private String readName() {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            skipWhitespace();
+            if (pos == lineLen) return sb.toString();
+
+            if (sb.length() > 0) sb.append(' ');
+            int start = pos;
+            skipToken();
+            sb.append(line, start, pos - start);
+        }
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed line: " + new String(line, 0, lineLen).trim());
+    }
+
+    private static void illegalAssert(boolean b, String err) {
+        if (!b) throw new IllegalArgumentException(err);
+    }
+}
@@ -0,0 +1,269 @@
+package codechicken.lib.render;
+
+import java.util.ArrayList;
+
+import codechicken.lib.lighting.LC;
+import codechicken.lib.render.uv.UV;
+import codechicken.lib.render.uv.UVTransformation;
+import codechicken.lib.vec.Transformation;
+import codechicken.lib.vec.Vector3;
+
+/**
+ * A CCModel stored as flat primitive arrays instead of Vertex5/Vector3/LC objects. Positions, uvs, normals and light
+ * coords are each a single array, so a model costs a handful of objects regardless of vertex count. Vertices are loaded
+ * into the render state by {@link #prepareVertex}, normals and light coords are read directly by their attributes.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+public class PackedModel implements CCRenderState.IVertexSource {
+
+    public final int vertexMode;
+    public final int vp;
+    public final int vertexCount;
+    /**
+     * x, y, z for each vertex
+     */
+    public final double[] positions;
+    /**
+     * u, v for each vertex
+     */
+    public final double[] uvs;
+    /**
+     * Texture index for each vertex, null if all vertices use texture 0
+     */
+    public int[] tex;
+    /**
+     * x, y, z for each vertex, null if the model has no normals
+     */
+    public float[] normals;
+    /**
+     * The side of each light coord, null if the model has no light coords
+     */
+    public int[] lcSides;
+    /**
+     * fa, fb, fc, fd for each light coord
+     */
+    public float[] lcWeights;
+    /**
+     * All other attributes, in the same layout as CCModel.attributes
+     */
+    public ArrayList<Object> attributes = new ArrayList<>();
+
+    public PackedModel(int vertexMode, int vertexCount) {
+        if (vertexMode != 7 && vertexMode != 4)
+            throw new IllegalArgumentException("Models must be GL_QUADS or GL_TRIANGLES");
+
+        this.vertexMode = vertexMode;
+        this.vertexCount = vertexCount;
+        vp = vertexMode == 7 ? 4 : 3;
+        positions = new double[vertexCount * 3];
+        uvs = new double[vertexCount * 2];
+    }
+
+    /**
+     * @return A packed copy of model. Later changes to either model are not reflected in the other
+     */
+    public static PackedModel pack(CCModel model) {
+        Vertex5[] verts = model.verts;
+        PackedModel packed = new PackedModel(model.vertexMode, verts.length);
+        for (int i = 0; i < verts.length; i++) {
+            Vertex5 vert = verts[i];
+            packed.positions[i * 3] = vert.vec.x;
+            packed.positions[i * 3 + 1] = vert.vec.y;
+            packed.positions[i * 3 + 2] = vert.vec.z;
+            packed.uvs[i * 2] = vert.uv.u;
+            packed.uvs[i * 2 + 1] = vert.uv.v;
+            if (vert.uv.tex != 0) {
+                if (packed.tex == null) packed.tex = new int[verts.length];
+                packed.tex[i] = vert.uv.tex;
+            }
+        }
+
+        for (int a = 0; a < model.attributes.size(); a++) {
+            Object array = model.attributes.get(a);
+            if (array == null) continue;
+
+            if (a == CCRenderState.normalAttrib.attributeIndex) packed.packNormals((Vector3[]) array);
+            else if (a == CCRenderState.lightCoordAttrib.attributeIndex) packed.packLightCoords((LC[]) array);
+            else packed.setAttribute(a, copyAttribute(a, array, verts.length));
+        }
+        return packed;
+    }
+
+    private void packNormals(Vector3[] src) {
+        normals = new float[vertexCount * 3];
+        for (int i = 0; i < vertexCount; i++) {
+            Vector3 n = src[i];
+            if (n == null) continue;
+            normals[i * 3] = (float) n.x;
+            normals[i * 3 + 1] = (float) n.y;
+            normals[i * 3 + 2] = (float) n.z;
+        }
+    }
+
+    private void packLightCoords(LC[] src) {
+        lcSides = new int[vertexCount];
+        lcWeights = new float[vertexCount * 4];
+        for (int i = 0; i < vertexCount; i++) {
+            LC lc = src[i];
+            if (lc == null) continue;
+            lcSides[i] = lc.side;
+            lcWeights[i * 4] = lc.fa;
+            lcWeights[i * 4 + 1] = lc.fb;
+            lcWeights[i * 4 + 2] = lc.fc;
+            lcWeights[i * 4 + 3] = lc.fd;
+        }
+    }
+
+    private static Object copyAttribute(int index, Object array, int length) {
+        return CCRenderState.copyOf((CCRenderState.VertexAttribute) CCRenderState.getAttribute(index), array, length);
+    }
+
+    private void setAttribute(int index, Object array) {
+        while (attributes.size() <= index) attributes.add(null);
+        attributes.set(index, array);
+    }
+
+    /**
+     * @return A new CCModel with the same vertices and attributes as this model
+     */
+    public CCModel unpack() {
+        CCModel model = CCModel.newModel(vertexMode, vertexCount);
+        for (int i = 0; i < vertexCount; i++) model.verts[i] = new Vertex5(
+                positions[i * 3],
+                positions[i * 3 + 1],
+                positions[i * 3 + 2],
+                uvs[i * 2],
+                uvs[i * 2 + 1],
+                tex == null ? 0 : tex[i]);
+
+        if (normals != null) {
+            Vector3[] n = model.getOrAllocate(CCRenderState.normalAttrib);
+            for (int i = 0; i < vertexCount; i++)
+                n[i] = new Vector3(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+        }
+        if (lcSides != null) {
+            LC[] lcs = model.getOrAllocate(CCRenderState.lightCoordAttrib);
+            for (int i = 0; i < vertexCount; i++) lcs[i] = new LC(
+                    lcSides[i],
+                    lcWeights[i * 4],
+                    lcWeights[i * 4 + 1],
+                    lcWeights[i * 4 + 2],
+                    lcWeights[i * 4 + 3]);
+        }
+        for (int a = 0; a < attributes.size(); a++) {
+            Object array = attributes.get(a);
+            if (array == null) continue;
+
+            while (model.attributes.size() <= a) model.attributes.add(null);
+            model.attributes.set(a, copyAttribute(a, array, vertexCount));
+        }
+        return model;
+    }
+
+    public PackedModel copy() {
+        PackedModel model = new PackedModel(vertexMode, vertexCount);
+        System.arraycopy(positions, 0, model.positions, 0, positions.length);
+        System.arraycopy(uvs, 0, model.uvs, 0, uvs.length);
+        if (tex != null) model.tex = tex.clone();
+        if (normals != null) model.normals = normals.clone();
+        if (lcSides != null) {
+            model.lcSides = lcSides.clone();
+            model.lcWeights = lcWeights.clone();
+        }
+        for (int a = 0; a < attributes.size(); a++)
+            if (attributes.get(a) != null) model.setAttribute(a, copyAttribute(a, attributes.get(a), vertexCount));
+
+        return model;
+    }
+
+    public PackedModel apply(Transformation t) {
+        Vector3 vec = new Vector3();
+        for (int i = 0; i < positions.length; i += 3) {
+            t.apply(vec.set(positions[i], positions[i + 1], positions[i + 2]));
+            positions[i] = vec.x;
+            positions[i + 1] = vec.y;
+            positions[i + 2] = vec.z;
+        }
+
+        if (normals != null) for (int i = 0; i < normals.length; i += 3) {
+            t.applyN(vec.set(normals[i], normals[i + 1], normals[i + 2]));
+            normals[i] = (float) vec.x;
+            normals[i + 1] = (float) vec.y;
+            normals[i + 2] = (float) vec.z;
+        }
+
+        return this;
+    }
+
+    public PackedModel apply(UVTransformation uvt) {
+        UV uv = new UV();
+        for (int i = 0; i < vertexCount; i++) {
+            uvt.apply(uv.set(uvs[i * 2], uvs[i * 2 + 1], tex == null ? 0 : tex[i]));
+            uvs[i * 2] = uv.u;
+            uvs[i * 2 + 1] = uv.v;
+            if (uv.tex != 0 && tex == null) tex = new int[vertexCount];
+            if (tex != null) tex[i] = uv.tex;
+        }
+
+        return this;
+    }
+
+    public void render(CCRenderState state, CCRenderState.IVertexOperation... ops) {
+        render(state, 0, vertexCount, ops);
+    }
+
+    public void render(CCRenderState.IVertexOperation... ops) {
+        render(CCRenderState.instance(), 0, vertexCount, ops);
+    }
+
+    /**
+     * Renders vertices start through end-1 of the model
+     */
+    public void render(CCRenderState state, int start, int end, CCRenderState.IVertexOperation... ops) {
+        state.setPipelineInstance(this, start, end, ops);
+        state.renderInstance();
+    }
+
+    /**
+     * Always null, vertices are loaded in prepareVertex
+     */
+    @Override
+    public Vertex5[] getVertices() {
+        return null;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Normals and light coords are not available as object arrays, their attributes read {@link #normals} and
+     * {@link #lcWeights} directly
+     */
+    @Override
+    public <T> T getAttributes(CCRenderState.VertexAttribute<T> attr) {
+        if (attr.attributeIndex < attributes.size()) return (T) attributes.get(attr.attributeIndex);
+
+        return null;
+    }
+
+    @Override
+    public boolean hasAttribute(CCRenderState.VertexAttribute<?> attr) {
+        if (attr == CCRenderState.normalAttrib) return normals != null;
+        if (attr == CCRenderState.lightCoordAttrib) return lcSides != null;
+        return attr.attributeIndex < attributes.size() && attributes.get(attr.attributeIndex) != null;
+    }
+
+    @Override
+    public void prepareVertex(CCRenderState state) {
+        int i = state.vertexIndex;
+        state.vert.set(
+                positions[i * 3],
+                positions[i * 3 + 1],
+                positions[i * 3 + 2],
+                uvs[i * 2],
+                uvs[i * 2 + 1],
+                tex == null ? 0 : tex[i]);
+    }
+}
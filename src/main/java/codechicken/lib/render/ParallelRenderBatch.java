@@ -0,0 +1,114 @@
+package codechicken.lib.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.IVertexSource;
+
+/**
+ * Renders a list of (model, operations) jobs on a thread pool, each job into its own {@link BufferVertexConsumer}.
+ * Every worker renders with its own thread local CCRenderState. Operations shared between jobs must not carry per
+ * block state, use the setup callback to locate the worker's lightMatrix or per thread instances instead.
+ */
+public class ParallelRenderBatch {
+
+    public static class Job {
+
+        public final IVertexSource model;
+        public final int start;
+        public final int end;
+        public final IVertexOperation[] ops;
+        /**
+         * Called on the worker thread after the state has been reset, may be null
+         */
+        public Consumer<CCRenderState> setup;
+        public BufferVertexConsumer output;
+
+        public Job(IVertexSource model, int start, int end, IVertexOperation... ops) {
+            this.model = model;
+            this.start = start;
+            this.end = end;
+            this.ops = ops;
+        }
+
+        public Job(IVertexSource model, IVertexOperation... ops) {
+            this(model, 0, model.getVertexCount(), ops);
+        }
+
+        public Job setup(Consumer<CCRenderState> setup) {
+            this.setup = setup;
+            return this;
+        }
+
+        /**
+         * Render into this buffer instead of a new one
+         */
+        public Job output(BufferVertexConsumer output) {
+            this.output = output;
+            return this;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    public ParallelRenderBatch(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "CCL Render Batch #" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ParallelRenderBatch() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Renders all jobs in parallel and waits for them to complete. Each job's output is filled in
+     */
+    public void render(List<Job> jobs) {
+        List<Future<?>> futures = new ArrayList<>(jobs.size());
+        for (Job job : jobs) futures.add(executor.submit(() -> render(job)));
+
+        try {
+            for (Future<?> f : futures) f.get();
+        } catch (InterruptedException e) {
+            for (Future<?> f : futures) f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while rendering batch", e);
+        } catch (ExecutionException e) {
+            for (Future<?> f : futures) f.cancel(true);
+            throw new RuntimeException("Failed to render batch", e.getCause());
+        }
+    }
+
+    private static void render(Job job) {
+        if (job.output == null) job.output = new BufferVertexConsumer(job.end - job.start);
+        else job.output.ensureCapacity(job.end - job.start);
+
+        CCRenderState state = CCRenderState.instance();
+        CCRenderState.IVertexConsumer prev = state.vertexConsumer;
+        state.resetInstance();
+        state.vertexConsumer = job.output;
+        try {
+            if (job.setup != null) job.setup.accept(state);
+            state.setPipelineInstance(job.model, job.start, job.end, job.ops);
+            state.renderInstance();
+            job.output.flush();
+        } finally {
+            state.vertexConsumer = prev;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
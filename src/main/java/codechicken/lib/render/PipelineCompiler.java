@@ -0,0 +1,247 @@
+package codechicken.lib.render;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import codechicken.lib.asm.ASMHelper;
+import codechicken.lib.render.CCRenderState.IVertexOperation;
+import codechicken.lib.render.CCRenderState.IVertexSource;
+
+/**
+ * Generates a specialised vertex loop for each pipeline shape (model class + sorted operation classes). Every generated
+ * class has its own call sites for each operation, so the JIT sees monomorphic receivers and can inline them even when
+ * dozens of mods share the pipeline. Shapes are only compiled after being rendered {@link #compileThreshold} times.
+ */
+public class PipelineCompiler {
+
+    /**
+     * Set to true to render stable pipelines through generated classes
+     */
+    public static boolean enabled = false;
+    /**
+     * The number of times a shape must be built before a class is generated for it
+     */
+    public static int compileThreshold = 64;
+    /**
+     * Upper bound on the number of generated classes, further shapes are always interpreted
+     */
+    public static int maxCompiledShapes = 512;
+
+    private static final String CLASS_PREFIX = "codechicken/lib/render/generated/CompiledPipeline$";
+    private static final String STATE = Type.getInternalName(CCRenderState.class);
+    private static final String SOURCE = Type.getInternalName(IVertexSource.class);
+    private static final String OPERATION = Type.getInternalName(IVertexOperation.class);
+    private static final String VERTEX = Type.getInternalName(Vertex5.class);
+    private static final String BASE = Type.getInternalName(CompiledPipeline.class);
+
+    private static final ConcurrentHashMap<Shape, ShapeEntry> shapes = new ConcurrentHashMap<>();
+    private static final AtomicInteger compiledCount = new AtomicInteger();
+    private static final PipelineClassLoader classLoader = new PipelineClassLoader();
+
+    /**
+     * Runs the whole vertex loop for a pipeline with a fixed shape. Instances are stateless and shared between threads
+     */
+    public abstract static class CompiledPipeline {
+
+        /**
+         * @param state The render state with the model and vertex range bound
+         * @param ops   The sorted operations, with the classes this pipeline was compiled for
+         */
+        public abstract void render(CCRenderState state, IVertexOperation[] ops);
+    }
+
+    private static class Shape {
+
+        private final Class<?>[] classes;
+        private final int hash;
+
+        public Shape(Class<?>[] classes) {
+            this.classes = classes;
+            hash = Arrays.hashCode(classes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Shape && Arrays.equals(classes, ((Shape) o).classes);
+        }
+    }
+
+    private static class ShapeEntry {
+
+        private final AtomicInteger builds = new AtomicInteger();
+        private volatile CompiledPipeline compiled;
+        private volatile boolean failed;
+    }
+
+    private static class PipelineClassLoader extends ClassLoader {
+
+        public PipelineClassLoader() {
+            super(PipelineCompiler.class.getClassLoader());
+        }
+
+        public Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Fills shapeKey with the model class followed by the operation classes
+     *
+     * @return shapeKey, or a new array if it was the wrong length
+     */
+    public static Class<?>[] shapeOf(IVertexSource model, IVertexOperation[] ops, int count, Class<?>[] shapeKey) {
+        if (shapeKey == null || shapeKey.length != count + 1) shapeKey = new Class<?>[count + 1];
+        shapeKey[0] = model.getClass();
+        for (int i = 0; i < count; i++) shapeKey[i + 1] = ops[i].getClass();
+        return shapeKey;
+    }
+
+    /**
+     * Records a build of the given shape and returns the compiled pipeline for it if one is available
+     *
+     * @param shapeKey An array from {@link #shapeOf}, copied if a new shape is recorded
+     * @return The compiled pipeline, or null if the shape should be interpreted
+     */
+    public static CompiledPipeline lookup(Class<?>[] shapeKey) {
+        ShapeEntry entry = shapes.get(new Shape(shapeKey));
+        if (entry == null) {
+            if (shapes.size() >= maxCompiledShapes * 4) return null;
+            ShapeEntry prev = shapes.putIfAbsent(new Shape(shapeKey.clone()), entry = new ShapeEntry());
+            if (prev != null) entry = prev;
+        }
+
+        CompiledPipeline compiled = entry.compiled;
+        if (compiled != null || entry.failed) return compiled;
+        if (entry.builds.incrementAndGet() < compileThreshold) return null;
+
+        synchronized (entry) {
+            if (entry.compiled == null && !entry.failed) {
+                if (compiledCount.get() >= maxCompiledShapes) entry.failed = true;
+                else entry.compiled = compile(shapeKey, entry);
+            }
+        }
+        return entry.compiled;
+    }
+
+    private static CompiledPipeline compile(Class<?>[] shapeKey, ShapeEntry entry) {
+        String name = CLASS_PREFIX + compiledCount.getAndIncrement();
+        try {
+            byte[] bytes = generate(name, shapeKey.length - 1);
+            Class<?> c = classLoader.define(name.replace('/', '.'), bytes);
+            return (CompiledPipeline) c.getConstructor().newInstance();
+        } catch (Throwable t) {
+            ASMHelper.logger.error("Failed to compile render pipeline " + Arrays.toString(shapeKey), t);
+            entry.failed = true;
+            return null;
+        }
+    }
+
+    /**
+     * Equivalent to CCRenderState.renderInstance with the pipeline operations unrolled
+     */
+    private static byte[] generate(String name, int opCount) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, BASE, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // locals: 0 this, 1 state, 2 ops, 3 model, 4 verts, 5+ op i
+        mv = cw.visitMethod(ACC_PUBLIC, "render", "(L" + STATE + ";[L" + OPERATION + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "model", "L" + SOURCE + ";");
+        mv.visitVarInsn(ASTORE, 3);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitMethodInsn(INVOKEINTERFACE, SOURCE, "getVertices", "()[L" + VERTEX + ";", true);
+        mv.visitVarInsn(ASTORE, 4);
+        for (int i = 0; i < opCount; i++) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            mv.visitVarInsn(ASTORE, 5 + i);
+        }
+
+        // for (vertexIndex = firstVertexIndex; vertexIndex < lastVertexIndex; vertexIndex++)
+        Label loop = new Label();
+        Label cond = new Label();
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "firstVertexIndex", "I");
+        mv.visitFieldInsn(PUTFIELD, STATE, "vertexIndex", "I");
+        mv.visitJumpInsn(GOTO, cond);
+
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEINTERFACE, SOURCE, "prepareVertex", "(L" + STATE + ";)V", true);
+
+        // sources without a vertex array load the vertex in prepareVertex
+        Label prepared = new Label();
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitJumpInsn(IFNULL, prepared);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "vert", "L" + VERTEX + ";");
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "vertexIndex", "I");
+        mv.visitInsn(AALOAD);
+        mv.visitMethodInsn(INVOKEVIRTUAL, VERTEX, "set", "(L" + VERTEX + ";)L" + VERTEX + ";", false);
+        mv.visitInsn(POP);
+        mv.visitLabel(prepared);
+
+        for (int i = 0; i < opCount; i++) {
+            mv.visitVarInsn(ALOAD, 5 + i);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKEINTERFACE, OPERATION, "operate", "(L" + STATE + ";)V", true);
+        }
+
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, STATE, "writeVertInstance", "()V", false);
+
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(DUP);
+        mv.visitFieldInsn(GETFIELD, STATE, "vertexIndex", "I");
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IADD);
+        mv.visitFieldInsn(PUTFIELD, STATE, "vertexIndex", "I");
+
+        mv.visitLabel(cond);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "vertexIndex", "I");
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(GETFIELD, STATE, "lastVertexIndex", "I");
+        mv.visitJumpInsn(IF_ICMPLT, loop);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * @return The number of pipeline classes generated so far
+     */
+    public static int compiledShapes() {
+        return compiledCount.get();
+    }
+}
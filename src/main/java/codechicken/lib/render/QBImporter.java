@@ -8,12 +8,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import javax.imageio.ImageIO;
 
@@ -39,104 +40,193 @@ import codechicken.lib.vec.Vector3;
 
 public class QBImporter {
 
-    private static class ImagePackNode {
-
-        Rectangle4i rect;
-        ImagePackNode child1;
-        ImagePackNode child2;
-        QBImage packed;
+    /**
+     * Packs images into a power of two texture with a skyline bottom-left heuristic. Each image is placed, upright or
+     * transposed, wherever its top edge ends up lowest. Instead of growing the texture and restarting whenever an
+     * image doesn't fit, each candidate width is packed once and the one giving the smallest texture is kept.
+     */
+    private static class ImagePacker {
+
+        private static class Skyline {
+
+            final int width;
+            int height;
+            // the skyline, as segments sorted by x
+            int[] segX = new int[16];
+            int[] segY = new int[16];
+            int[] segW = new int[16];
+            int segments = 1;
+            // x, y and whether it was transposed, for each image
+            final int[] placements;
+
+            public Skyline(List<QBImage> images, int width) {
+                this.width = width;
+                segW[0] = width;
+                placements = new int[images.size() * 3];
+                for (int i = 0; i < images.size(); i++) place(i, images.get(i).width(), images.get(i).height());
+            }
 
-        public ImagePackNode(int x, int y, int w, int h) {
-            rect = new Rectangle4i(x, y, w, h);
-        }
+            /**
+             * @return The highest point of the skyline under [x, x+w) with x the start of segment i, or -1 if it
+             *         would pass the right edge
+             */
+            private int fitY(int i, int w) {
+                int end = segX[i] + w;
+                if (end > width) return -1;
+
+                int y = 0;
+                for (; i < segments && segX[i] < end; i++) y = Math.max(y, segY[i]);
+                return y;
+            }
 
-        public boolean pack(QBImage img) {
-            if (child1 != null) return child1.pack(img) || child2.pack(img);
+            private void place(int index, int w, int h) {
+                int bestTop = Integer.MAX_VALUE, bestSeg = 0, bestT = 0;
+                for (int t = 0; t < (w == h ? 1 : 2); t++) {
+                    int pw = t == 0 ? w : h, ph = t == 0 ? h : w;
+                    for (int i = 0; i < segments; i++) {
+                        int y = fitY(i, pw);
+                        if (y >= 0 && y + ph < bestTop) {
+                            bestTop = y + ph;
+                            bestSeg = i;
+                            bestT = t;
+                        }
+                    }
+                }
 
-            if (packed != null) return false;
+                int pw = bestT == 0 ? w : h, ph = bestT == 0 ? h : w;
+                placements[index * 3] = segX[bestSeg];
+                placements[index * 3 + 1] = bestTop - ph;
+                placements[index * 3 + 2] = bestT;
+                raise(bestSeg, pw, bestTop);
+                height = Math.max(height, bestTop);
+            }
 
-            int fit = getFit(img.width(), img.height());
-            if (fit == 0) return false;
+            /**
+             * Replaces the skyline under [x, x+w) with a segment at height y, where x is the start of segment i
+             */
+            private void raise(int i, int w, int y) {
+                int x = segX[i], end = x + w, j = i;
+                while (j < segments && segX[j] + segW[j] <= end) j++;
+                if (j < segments && segX[j] < end) {
+                    segW[j] -= end - segX[j];
+                    segX[j] = end;
+                }
 
-            if ((fit & 2) != 0) { // exact fit
-                packed = img;
-                img.packSlot = rect;
-                img.packT = new ImageTransform((fit & 1) << 2);
-                return true;
+                if (j == i && segments == segX.length) {
+                    segX = Arrays.copyOf(segX, segments * 2);
+                    segY = Arrays.copyOf(segY, segments * 2);
+                    segW = Arrays.copyOf(segW, segments * 2);
+                }
+                shift(j, i + 1);
+                segX[i] = x;
+                segY[i] = y;
+                segW[i] = w;
+
+                // merge with neighbours of the same height
+                if (i + 1 < segments && segY[i + 1] == y) {
+                    segW[i] += segW[i + 1];
+                    shift(i + 2, i + 1);
+                }
+                if (i > 0 && segY[i - 1] == y) {
+                    segW[i - 1] += segW[i];
+                    shift(i + 1, i);
+                }
             }
 
-            int w = (fit & 1) == 0 ? img.width() : img.height();
-            int h = (fit & 1) == 0 ? img.height() : img.width();
-
-            if (rect.w - w > rect.h - h) { // create split with biggest leftover space
-                child1 = new ImagePackNode(rect.x, rect.y, w, rect.h);
-                child2 = new ImagePackNode(rect.x + w, rect.y, rect.w - w, rect.h);
-            } else {
-                child1 = new ImagePackNode(rect.x, rect.y, rect.w, h);
-                child2 = new ImagePackNode(rect.x, rect.y + h, rect.w, rect.h - h);
+            private void shift(int from, int to) {
+                System.arraycopy(segX, from, segX, to, segments - from);
+                System.arraycopy(segY, from, segY, to, segments - from);
+                System.arraycopy(segW, from, segW, to, segments - from);
+                segments += to - from;
             }
-            return child1.pack(img);
         }
 
-        private int getFit(int w, int h) {
-            if (w == rect.w && h == rect.h) return 2;
-            if (w == rect.h && h == rect.w) return 3;
-            if (rect.w >= w && rect.h >= h) return 4;
-            if (rect.w >= h && rect.h >= w) return 5;
+        final List<QBImage> images;
+        final int width;
+        final int height;
+        final int usedArea;
 
-            return 0;
+        private ImagePacker(List<QBImage> images, int width, int height, int usedArea) {
+            this.images = images;
+            this.width = width;
+            this.height = height;
+            this.usedArea = usedArea;
         }
 
-        private static void nextSize(Rectangle4i rect, boolean square) {
-            if (square) {
-                rect.w <<= 1;
-                rect.h <<= 1;
-            } else {
-                if (rect.w == rect.h) rect.w *= 2;
-                else rect.h *= 2;
-            }
+        private static int nextPow2(int i) {
+            return Math.max(2, Integer.highestOneBit(Math.max(i - 1, 1)) << 1);
         }
 
-        public static ImagePackNode pack(List<QBImage> images, boolean square) {
-            Collections.sort(images);
+        public static ImagePacker pack(List<QBImage> images, boolean square, boolean parallel) {
+            // tallest first, measuring each image by its longer side as it may be transposed
+            List<QBImage> sorted = new ArrayList<>(images);
+            sorted.sort((a, b) -> {
+                int c = Integer.compare(Math.max(b.width(), b.height()), Math.max(a.width(), a.height()));
+                return c != 0 ? c : a.compareTo(b);
+            });
 
-            int area = 0;
-            for (QBImage img : images) area += img.area();
-
-            ImagePackNode node = new ImagePackNode(0, 0, 2, 2);
-            while (node.rect.area() < area) nextSize(node.rect, square);
+            int area = 0, minWidth = 1;
+            for (QBImage img : sorted) {
+                area += img.area();
+                minWidth = Math.max(minWidth, Math.min(img.width(), img.height()));
+            }
 
-            while (true) {
-                boolean packed = true;
-                for (QBImage img : images) if (!node.pack(img)) {
-                    packed = false;
-                    break;
+            int side = nextPow2((int) Math.ceil(Math.sqrt(area)));
+            int from = Math.max(nextPow2(minWidth), side / 4);
+            int to = Math.max(from, side * 2);
+            List<Integer> widths = new ArrayList<>();
+            for (int w = from; w <= to; w <<= 1) widths.add(w);
+
+            Skyline[] packs = new Skyline[widths.size()];
+            IntStream indices = IntStream.range(0, packs.length);
+            if (parallel) indices = indices.parallel();
+            indices.forEach(i -> packs[i] = new Skyline(sorted, widths.get(i)));
+
+            // smallest area, then smallest longest side, then widest
+            Skyline best = null;
+            int bestW = 0, bestH = 0;
+            for (Skyline s : packs) {
+                int w = s.width, h = nextPow2(s.height);
+                if (square) w = h = Math.max(w, h);
+                if (best == null || (long) w * h < (long) bestW * bestH
+                        || (long) w * h == (long) bestW * bestH && Math.max(w, h) < Math.max(bestW, bestH)) {
+                    best = s;
+                    bestW = w;
+                    bestH = h;
                 }
+            }
 
-                if (packed) return node;
-
-                node.child1 = node.child2 = null;
-                nextSize(node.rect, square);
+            for (int i = 0; i < sorted.size(); i++) {
+                QBImage img = sorted.get(i);
+                boolean transposed = best.placements[i * 3 + 2] != 0;
+                img.packT = new ImageTransform(transposed ? 4 : 0);
+                img.packSlot = new Rectangle4i(
+                        best.placements[i * 3],
+                        best.placements[i * 3 + 1],
+                        transposed ? img.height() : img.width(),
+                        transposed ? img.width() : img.height());
             }
+            return new ImagePacker(sorted, bestW, bestH, area);
         }
 
-        public BufferedImage toImage() {
-            BufferedImage img = new BufferedImage(rect.w, rect.h, BufferedImage.TYPE_INT_ARGB);
-            write(img);
-            return img;
+        /**
+         * @return The fraction of the texture covered by images
+         */
+        public double efficiency() {
+            return usedArea / (double) (width * height);
         }
 
-        private void write(BufferedImage img) {
-            if (child1 != null) {
-                child1.write(img);
-                child2.write(img);
-            } else if (packed != null) {
+        public BufferedImage toImage() {
+            BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (QBImage packed : images) {
                 ImageTransform t = packed.packT;
+                Rectangle4i rect = packed.packSlot;
                 for (int u = 0; u < rect.w; u++) for (int v = 0; v < rect.h; v++) {
                     int rgba = t.access(packed, u, v);
                     img.setRGB(u + rect.x, v + rect.y, rgba >>> 8 | rgba << 24);
                 }
             }
+            return img;
         }
     }
 
@@ -194,6 +284,8 @@ public class QBImporter {
         int[][] data;
         ImageTransform packT;
         Rectangle4i packSlot;
+        private long key;
+        private boolean hashed;
 
         public int width() {
             return data.length;
@@ -207,6 +299,31 @@ public class QBImporter {
             return width() * height();
         }
 
+        /**
+         * @return A hash that is the same for any two images where one is a transform of the other
+         */
+        public long key() {
+            if (!hashed) {
+                long min = Long.MAX_VALUE;
+                for (int i = 0; i < 8; i++) min = Math.min(min, hash(new ImageTransform(i)));
+                key = min;
+                hashed = true;
+            }
+            return key;
+        }
+
+        /**
+         * @return The hash of this image as seen through t
+         */
+        private long hash(ImageTransform t) {
+            int w = t.transpose() ? height() : width();
+            int h = t.transpose() ? width() : height();
+            long hash = w * 31L + h;
+            for (int u = 0; u < w; u++)
+                for (int v = 0; v < h; v++) hash = hash * 0x9E3779B97F4A7C15L + t.access(this, u, v);
+            return hash ^ hash >>> 31;
+        }
+
         @Override
         public int compareTo(QBImage o) {
             int a = area();
@@ -453,21 +570,118 @@ public class QBImporter {
             for (int x = 0; x < size.x; x++) for (int z = 0; z < size.z; z++)
                 for (int y = 0; y < size.y; y++) if (solid[x][y][z]) list.add(expand(solid, new BlockCoord(x, y, z)));
 
-            for (int i = 0; i < list.size(); i++)
-                for (int j = i + 1; j < list.size(); j++) QBCuboid.clip(list.get(i), list.get(j));
-
+            clip(list);
             return list;
         }
 
+        /**
+         * Clips every intersecting pair of cuboids, in the same order as testing each pair (i, j > i) in turn.
+         * Clipping only shrinks cuboids, so the pairs that intersect before clipping are found with a sweep along x
+         * and rechecked as they are clipped.
+         */
+        private static void clip(List<QBCuboid> list) {
+            int n = list.size();
+            long[] order = new long[n];
+            for (int i = 0; i < n; i++) order[i] = (long) list.get(i).c.min.x << 32 | i;
+            Arrays.sort(order);
+
+            long[] pairs = new long[Math.max(n, 16)];
+            int pairCount = 0;
+            for (int a = 0; a < n; a++) {
+                int i = (int) order[a];
+                QBCuboid ci = list.get(i);
+                for (int b = a + 1; b < n; b++) {
+                    int j = (int) order[b];
+                    QBCuboid cj = list.get(j);
+                    if (cj.c.min.x > ci.c.max.x) break;
+                    if (!QBCuboid.intersects(ci, cj)) continue;
+
+                    if (pairCount == pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    pairs[pairCount++] = (long) Math.min(i, j) << 32 | Math.max(i, j);
+                }
+            }
+
+            Arrays.sort(pairs, 0, pairCount);
+            for (int p = 0; p < pairCount; p++)
+                QBCuboid.clip(list.get((int) (pairs[p] >>> 32)), list.get((int) pairs[p]));
+        }
+
         public List<QBQuad> extractQuads(boolean texturePlanes) {
-            List<QBQuad> quads = new LinkedList<QBQuad>();
-            for (QBCuboid c : rectangulate()) c.extractQuads(quads);
+            return extractQuads(texturePlanes, false);
+        }
+
+        /**
+         * @param greedy Build quads by greedily merging the visible faces of each layer instead of from cuboids
+         */
+        public List<QBQuad> extractQuads(boolean texturePlanes, boolean greedy) {
+            List<QBQuad> quads = new ArrayList<QBQuad>();
+            if (greedy) greedyMesh(quads);
+            else for (QBCuboid c : rectangulate()) c.extractQuads(quads);
 
             if (texturePlanes) optimisePlanes(quads);
 
             return quads;
         }
 
+        private boolean solid(int x, int y, int z) {
+            return x >= 0 && y >= 0
+                    && z >= 0
+                    && x < size.x
+                    && y < size.y
+                    && z < size.z
+                    && matrix[x][y][z] != 0;
+        }
+
+        /**
+         * Merges the exposed faces on each side of each layer into rectangles, scanning each layer once
+         */
+        private void greedyMesh(List<QBQuad> quads) {
+            int[] dims = new int[] { size.y, size.z, size.x };
+            int[] ia = new int[3];
+            for (int s = 0; s < 6; s++) {
+                int axis = s >> 1;
+                int uAxis = (axis + 1) % 3;
+                int vAxis = (axis + 2) % 3;
+                int du = dims[uAxis];
+                int dv = dims[vAxis];
+                BlockCoord off = BlockCoord.sideOffsets[s];
+                boolean[] mask = new boolean[du * dv];
+
+                for (int layer = 0; layer < dims[axis]; layer++) {
+                    ia[axis] = layer;
+                    for (int v = 0; v < dv; v++) for (int u = 0; u < du; u++) {
+                        ia[uAxis] = u;
+                        ia[vAxis] = v;
+                        int x = ia[2], y = ia[0], z = ia[1];
+                        mask[u + v * du] = matrix[x][y][z] != 0 && !solid(x + off.x, y + off.y, z + off.z);
+                    }
+
+                    for (int v = 0; v < dv; v++) for (int u = 0; u < du; u++) {
+                        if (!mask[u + v * du]) continue;
+
+                        int w = 1;
+                        while (u + w < du && mask[u + w + v * du]) w++;
+                        int h = 1;
+                        grow: while (v + h < dv) {
+                            for (int k = 0; k < w; k++) if (!mask[u + k + (v + h) * du]) break grow;
+                            h++;
+                        }
+                        for (int j = 0; j < h; j++) for (int k = 0; k < w; k++) mask[u + k + (v + j) * du] = false;
+
+                        int[] min = new int[3];
+                        int[] max = new int[3];
+                        min[axis] = max[axis] = layer;
+                        min[uAxis] = u;
+                        max[uAxis] = u + w - 1;
+                        min[vAxis] = v;
+                        max[vAxis] = v + h - 1;
+                        CuboidCoord c = new CuboidCoord(min[2], min[0], min[1], max[2], max[0], max[1]);
+                        quads.add(new QBCuboid(this, c).extractQuad(s, c.bounds()));
+                    }
+                }
+            }
+        }
+
         private void optimisePlanes(List<QBQuad> quads) {
             Multimap<Integer, QBQuad> map = HashMultimap.create();
             for (QBQuad quad : quads) map.put(quad.side | ((int) quad.verts[0].vec.getSide(quad.side)) << 3, quad);
@@ -517,11 +731,16 @@ public class QBImporter {
             return m;
         }
 
-        private static void addImages(List<QBQuad> quads, List<QBImage> images) {
+        /**
+         * Replaces the image of each quad with a transform of an image already in images, adding it if there is none.
+         * Images are only compared to those with the same {@link QBImage#key()}, the index of images by key.
+         */
+        private static void addImages(List<QBQuad> quads, List<QBImage> images, Map<Long, List<QBImage>> index) {
             for (QBQuad q : quads) {
                 QBImage img = q.image;
+                List<QBImage> candidates = index.computeIfAbsent(img.key(), k -> new ArrayList<>(1));
                 boolean matched = false;
-                for (QBImage img2 : images) {
+                for (QBImage img2 : candidates) {
                     ImageTransform t = img.transformTo(img2);
                     if (t != null) {
                         q.t = t;
@@ -530,7 +749,10 @@ public class QBImporter {
                         break;
                     }
                 }
-                if (!matched) images.add(img);
+                if (!matched) {
+                    images.add(img);
+                    candidates.add(img);
+                }
             }
         }
     }
@@ -539,6 +761,14 @@ public class QBImporter {
     public static final int SQUARETEXTURE = 2;
     public static final int MERGETEXTURES = 4;
     public static final int SCALEMC = 8;
+    /**
+     * Mesh each matrix by merging exposed faces layer by layer instead of rectangulating it into cuboids
+     */
+    public static final int GREEDYMESH = 16;
+    /**
+     * Extract quads and build models for the matrices of a model concurrently
+     */
+    public static final int PARALLEL = 32;
 
     public static class QBModel {
 
@@ -547,32 +777,54 @@ public class QBImporter {
 
         public RasterisedModel toRasterisedModel(int flags) {
             List<QBImage> qbImages = new ArrayList<QBImage>();
-            List<List<QBQuad>> modelQuads = new ArrayList<List<QBQuad>>();
             List<BufferedImage> images = new ArrayList<BufferedImage>();
 
             boolean texturePlanes = (flags & TEXTUREPLANES) != 0;
             boolean squareTextures = (flags & SQUARETEXTURE) != 0;
             boolean mergeTextures = (flags & MERGETEXTURES) != 0;
             boolean scaleMC = (flags & SCALEMC) != 0;
-
-            for (QBMatrix mat : matrices) {
-                List<QBQuad> quads = mat.extractQuads(texturePlanes);
-                modelQuads.add(quads);
-                QBMatrix.addImages(quads, qbImages);
+            boolean greedy = (flags & GREEDYMESH) != 0;
+            boolean parallel = (flags & PARALLEL) != 0;
+
+            // quads are extracted independently, images are then shared between matrices in order
+            List<List<QBQuad>> modelQuads = new ArrayList<>(Collections.nCopies(matrices.length, null));
+            IntStream indices = IntStream.range(0, matrices.length);
+            if (parallel) indices = indices.parallel();
+            indices.forEach(i -> {
+                List<QBQuad> quads = matrices[i].extractQuads(texturePlanes, greedy);
+                for (QBQuad q : quads) q.image.key();
+                modelQuads.set(i, quads);
+            });
+
+            Map<Long, List<QBImage>> index = new HashMap<>();
+            List<Double> efficiency = new ArrayList<>();
+            for (List<QBQuad> quads : modelQuads) {
+                QBMatrix.addImages(quads, qbImages, index);
                 if (!mergeTextures) {
-                    images.add(ImagePackNode.pack(qbImages, squareTextures).toImage());
+                    ImagePacker packer = ImagePacker.pack(qbImages, squareTextures, parallel);
+                    images.add(packer.toImage());
+                    efficiency.add(packer.efficiency());
                     qbImages.clear();
+                    index.clear();
                 }
             }
 
-            if (mergeTextures) images.add(ImagePackNode.pack(qbImages, squareTextures).toImage());
+            if (mergeTextures) {
+                ImagePacker packer = ImagePacker.pack(qbImages, squareTextures, parallel);
+                images.add(packer.toImage());
+                efficiency.add(packer.efficiency());
+            }
+
+            CCModel[] models = new CCModel[matrices.length];
+            indices = IntStream.range(0, matrices.length);
+            if (parallel) indices = indices.parallel();
+            indices.forEach(
+                    i -> models[i] = matrices[i]
+                            .buildModel(modelQuads.get(i), images.get(mergeTextures ? 0 : i), scaleMC));
 
             RasterisedModel m = new RasterisedModel(images);
-            for (int i = 0; i < matrices.length; i++) {
-                QBMatrix mat = matrices[i];
-                BufferedImage img = images.get(mergeTextures ? 0 : i);
-                m.add(mat.name, mat.buildModel(modelQuads.get(i), img, scaleMC));
-            }
+            m.efficiency = efficiency;
+            for (int i = 0; i < matrices.length; i++) m.add(matrices[i].name, models[i]);
             return m;
         }
     }
@@ -593,12 +845,25 @@ public class QBImporter {
         private Map<String, Holder> map = new HashMap<String, Holder>();
         private List<BufferedImage> images;
         private String[] icons;
+        private List<Double> efficiency;
 
         public RasterisedModel(List<BufferedImage> images) {
             this.images = images;
             icons = new String[images.size()];
         }
 
+        public List<BufferedImage> getImages() {
+            return Collections.unmodifiableList(images);
+        }
+
+        /**
+         * @return The fraction of each image covered by packed textures, or null if the images were not packed by
+         *         {@link QBModel#toRasterisedModel}
+         */
+        public List<Double> getPackingEfficiency() {
+            return efficiency == null ? null : Collections.unmodifiableList(efficiency);
+        }
+
         public void add(String name, CCModel m) {
             map.put(name, new Holder(m, Math.min(map.size(), images.size() - 1)));
         }
@@ -51,9 +51,28 @@ public class TextureFX {
         onTick();
     }
 
+    /**
+     * Computes the next frame without reading the game settings. Used by {@link TextureFXScheduler}
+     *
+     * @return true if imageData changed
+     */
+    public boolean tick(boolean anaglyph) {
+        anaglyphEnabled = anaglyph;
+        onTick();
+        return changed();
+    }
+
     public void onTick() {}
 
     public boolean changed() {
         return true;
     }
+
+    /**
+     * Return true if onTick and changed only touch this object's own state, so frames can be computed by a
+     * {@link TextureFXScheduler} worker a tick ahead of the render thread
+     */
+    public boolean tickInParallel() {
+        return false;
+    }
 }
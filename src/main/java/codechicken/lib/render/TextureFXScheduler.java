@@ -0,0 +1,114 @@
+package codechicken.lib.render;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes {@link TextureFX} frames on a thread pool one tick ahead of the render thread. Each tick the render thread
+ * takes the frame computed during the previous tick and starts the next one, so the onTick simulations of all scheduled
+ * textures run in parallel while the game renders. Mipmap generation and upload stay on the render thread, as
+ * TextureUtil's mipmap blending shares static scratch arrays.
+ * <p>
+ * Only textures returning true from {@link TextureFX#tickInParallel()} are scheduled. Nothing here touches GL or the
+ * game settings, so frames can be computed headless.
+ */
+public class TextureFXScheduler {
+
+    /**
+     * Set to false to compute every frame on the render thread
+     */
+    public static boolean enabled = true;
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "CCL TextureFX #" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Double buffered frames of one TextureFX. The back frame is written by a worker while the front frame is uploaded.
+     */
+    public static class Frames {
+
+        public final TextureFX fx;
+        private int[] front = new int[0];
+        private int[] back = new int[0];
+        private boolean frontChanged;
+        private boolean backChanged;
+        private boolean anaglyph;
+        private Future<?> pending;
+
+        public Frames(TextureFX fx) {
+            this.fx = fx;
+        }
+
+        /**
+         * @param anaglyph The anaglyph setting for the frame after this one
+         * @return The frame computed during the last tick, or null if it did not change. Valid until the next call
+         */
+        public int[] next(boolean anaglyph) {
+            if (!enabled) {
+                reset();
+                this.anaglyph = anaglyph;
+                compute();
+                return backChanged ? back : null;
+            }
+
+            if (pending == null) {
+                this.anaglyph = anaglyph;
+                compute();
+            } else finish();
+
+            int[] swap = front;
+            front = back;
+            back = swap;
+            frontChanged = backChanged;
+
+            this.anaglyph = anaglyph;
+            pending = executor().submit(this::compute);
+            return frontChanged ? front : null;
+        }
+
+        /**
+         * Waits for and discards the frame being computed. Call before changing the dimensions or state of the fx from
+         * the render thread.
+         */
+        public void reset() {
+            if (pending != null) finish();
+            pending = null;
+        }
+
+        private void finish() {
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while computing " + fx.getClass().getName(), e);
+            } catch (ExecutionException e) {
+                pending = null;
+                throw new RuntimeException("Failed to compute " + fx.getClass().getName(), e.getCause());
+            }
+        }
+
+        private void compute() {
+            backChanged = fx.tick(anaglyph);
+            if (!backChanged) return;
+
+            int[] data = fx.imageData;
+            if (back.length != data.length) back = new int[data.length];
+            System.arraycopy(data, 0, back, 0, data.length);
+        }
+    }
+}
@@ -27,6 +27,9 @@ public class TextureSpecial extends TextureAtlasSprite implements IIconSelfRegis
 
     // textureFX fields
     private TextureFX textureFX;
+    private TextureFXScheduler.Frames frames;
+    private int[][] mipmaps;
+    private int[][] anisotropicData;
     private int mipmapLevels;
     private int rawWidth;
     private int rawHeight;
@@ -61,37 +64,51 @@ public class TextureSpecial extends TextureAtlasSprite implements IIconSelfRegis
     @Override
     public void initSprite(int sheetWidth, int sheetHeight, int originX, int originY, boolean rotated) {
         super.initSprite(sheetWidth, sheetHeight, originX, originY, rotated);
-        if (textureFX != null) textureFX.onTextureDimensionsUpdate(rawWidth, rawHeight);
+        if (textureFX != null) {
+            if (frames != null) frames.reset();
+            textureFX.onTextureDimensionsUpdate(rawWidth, rawHeight);
+        }
     }
 
     @Override
     public void updateAnimation() {
-        if (textureFX != null) {
+        if (textureFX == null) return;
+
+        int[] data;
+        if (textureFX.tickInParallel()) {
+            if (frames == null) frames = new TextureFXScheduler.Frames(textureFX);
+            data = frames.next(Minecraft.getMinecraft().gameSettings.anaglyph);
+        } else {
             textureFX.update();
-            if (textureFX.changed()) {
-                int[][] mipmaps = new int[mipmapLevels + 1][];
-                mipmaps[0] = textureFX.imageData;
-                mipmaps = prepareAnisotropicFiltering(mipmaps);
-                mipmaps = TextureUtil.generateMipmapData(mipmapLevels, width, mipmaps);
-                TextureUtil.uploadTextureMipmap(mipmaps, width, height, originX, originY, false, false);
-            }
+            data = textureFX.changed() ? textureFX.imageData : null;
         }
+        if (data == null) return;
+
+        if (mipmaps == null || mipmaps.length != mipmapLevels + 1) mipmaps = new int[mipmapLevels + 1][];
+        mipmaps[0] = data;
+        int[][] levels = TextureUtil.generateMipmapData(mipmapLevels, width, prepareAnisotropicFiltering(mipmaps));
+        TextureUtil.uploadTextureMipmap(levels, width, height, originX, originY, false, false);
     }
 
     /**
-     * Copy paste mojang code because it's private, and CCL can't have access transformers or reflection
+     * Copy paste mojang code because it's private, and CCL can't have access transformers or reflection. The padded
+     * arrays are kept between frames.
      */
     public int[][] prepareAnisotropicFiltering(int[][] mipmaps) {
         if (Minecraft.getMinecraft().gameSettings.anisotropicFiltering <= 1) {
             return mipmaps;
         } else {
+            if (anisotropicData == null || anisotropicData.length != mipmaps.length)
+                anisotropicData = new int[mipmaps.length][];
             int[][] aint1 = new int[mipmaps.length][];
 
             for (int k = 0; k < mipmaps.length; ++k) {
                 int[] aint2 = mipmaps[k];
 
                 if (aint2 != null) {
-                    int[] aint3 = new int[(rawWidth + 16 >> k) * (rawHeight + 16 >> k)];
+                    int size = (rawWidth + 16 >> k) * (rawHeight + 16 >> k);
+                    int[] aint3 = anisotropicData[k];
+                    if (aint3 == null || aint3.length != size) anisotropicData[k] = aint3 = new int[size];
                     System.arraycopy(aint2, 0, aint3, 0, aint2.length);
                     aint1[k] = TextureUtil.prepareAnisotropicData(aint3, rawWidth >> k, rawHeight >> k, 8 >> k);
                 }
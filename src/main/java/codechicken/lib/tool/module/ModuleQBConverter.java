@@ -2,7 +2,9 @@ package codechicken.lib.tool.module;
 
 import static java.util.Arrays.asList;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.List;
 
 import codechicken.lib.render.QBImporter;
 import joptsimple.OptionParser;
@@ -21,6 +23,8 @@ public class ModuleQBConverter extends JOptModule {
         parser.acceptsAll(asList("s", "squaretextures"), "Produce square textures");
         parser.acceptsAll(asList("t", "mergetextures"), "Use the same texture for all models");
         parser.acceptsAll(asList("r", "scalemc"), "Resize model to mc standard (shrink by factor of 16)");
+        parser.acceptsAll(asList("g", "greedymesh"), "Mesh matrices layer by layer instead of by cuboids");
+        parser.acceptsAll(asList("p", "parallel"), "Convert the matrices of each model concurrently");
     }
 
     protected void main(OptionParser parser, OptionSet options) {
@@ -29,6 +33,8 @@ public class ModuleQBConverter extends JOptModule {
         if (options.has("s")) flags |= QBImporter.SQUARETEXTURE;
         if (options.has("t")) flags |= QBImporter.MERGETEXTURES;
         if (options.has("r")) flags |= QBImporter.SCALEMC;
+        if (options.has("g")) flags |= QBImporter.GREEDYMESH;
+        if (options.has("p")) flags |= QBImporter.PARALLEL;
 
         File[] input = options.valuesOf("input").toArray(new File[0]);
         File[] outDir = new File[input.length];
@@ -56,6 +62,15 @@ public class ModuleQBConverter extends JOptModule {
         System.out.println("Converting: " + in.getName());
         QBImporter.RasterisedModel m = QBImporter.loadQB(in).toRasterisedModel(flags);
         m.export(new File(outDir, in.getName().replace(".qb", ".obj")), outDir);
+
+        List<BufferedImage> images = m.getImages();
+        List<Double> efficiency = m.getPackingEfficiency();
+        for (int i = 0; i < images.size(); i++) System.out.printf(
+                "  Texture %d: %dx%d, %.1f%% used%n",
+                i,
+                images.get(i).getWidth(),
+                images.get(i).getHeight(),
+                efficiency.get(i) * 100);
     }
 
     @Override
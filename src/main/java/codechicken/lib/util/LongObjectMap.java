@@ -0,0 +1,161 @@
+package codechicken.lib.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An open addressing hash map from primitive longs to non-null values, intended for packed chunk coordinates. Keys are
+ * mixed before probing so coordinates along rows and diagonals spread evenly, and lookups neither box the key nor
+ * allocate.
+ */
+public class LongObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5F;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 4) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Packs chunk coordinates into a key
+     */
+    public static long key(int x, int z) {
+        return (long) x & 0xFFFFFFFFL | ((long) z & 0xFFFFFFFFL) << 32;
+    }
+
+    public static int keyX(long key) {
+        return (int) key;
+    }
+
+    public static int keyZ(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int indexOf(long key) {
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) return i;
+            i = i + 1 & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    public V get(int x, int z) {
+        return get(key(x, z));
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return The previous value for key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("Null values are not supported");
+
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V prev = (V) values[i];
+                values[i] = value;
+                return prev;
+            }
+            i = i + 1 & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) rehash(keys.length << 1);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) return null;
+
+        V prev = (V) values[i];
+        size--;
+        // shift back following entries in the probe chain so lookups never need tombstones
+        int gap = i;
+        for (int j = gap + 1 & mask; values[j] != null; j = j + 1 & mask) {
+            int home = mix(keys[j]) & mask;
+            if ((j - home & mask) >= (j - gap & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        return prev;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) if (oldValues[i] != null) {
+            int j = mix(oldKeys[i]) & mask;
+            while (values[j] != null) j = j + 1 & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return A snapshot of the values in the map
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (int i = 0; i < values.length; i++) if (values[i] != null) list.add((V) values[i]);
+        return list;
+    }
+}
@@ -46,7 +46,7 @@ public abstract class Transformation extends ITransformation<Vector3, Transforma
     @Override
     public void operate(CCRenderState state) {
         apply(state.vert.vec);
-        if (CCRenderState.normalAttrib.active) applyN(state.normal);
+        if (state.pipeline.isActive(CCRenderState.normalAttrib)) applyN(state.normal);
     }
 
     @Override
@@ -0,0 +1,107 @@
+package codechicken.lib.vec;
+
+import java.util.Arrays;
+
+import codechicken.lib.util.LongObjectMap;
+
+/**
+ * Assigns indices to points, giving points within a tolerance of an earlier point that point's index. Points are
+ * bucketed in a spatial hash, so each lookup is constant time rather than a scan of all previous points.
+ * <p>
+ * With a tolerance of 0, points match when their coordinates are == (the same as {@link Vector3#equals}). Otherwise
+ * they match when each coordinate is within the tolerance, and a point matching several earlier points gets the lowest
+ * index.
+ */
+public class Vector3Index {
+
+    public final double tolerance;
+    private final LongObjectMap<int[]> buckets = new LongObjectMap<>();
+    private double[] points = new double[48];
+    private int size;
+
+    public Vector3Index(double tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("Negative tolerance: " + tolerance);
+        this.tolerance = tolerance;
+    }
+
+    public Vector3Index() {
+        this(0);
+    }
+
+    private static long hash(long a, long b, long c) {
+        return (a * 0x9E3779B97F4A7C15L + b) * 0x9E3779B97F4A7C15L + c;
+    }
+
+    private static long bits(double d) {
+        return Double.doubleToLongBits(d + 0.0); // -0.0 == 0.0
+    }
+
+    private long cell(double d) {
+        return (long) Math.floor(d / tolerance);
+    }
+
+    /**
+     * @return The index of the first point matching x, y, z, or -1
+     */
+    public int find(double x, double y, double z) {
+        if (tolerance == 0) return find(buckets.get(hash(bits(x), bits(y), bits(z))), x, y, z, -1);
+
+        long cx = cell(x), cy = cell(y), cz = cell(z);
+        int found = -1;
+        for (long i = cx - 1; i <= cx + 1; i++) for (long j = cy - 1; j <= cy + 1; j++)
+            for (long k = cz - 1; k <= cz + 1; k++) found = find(buckets.get(hash(i, j, k)), x, y, z, found);
+        return found;
+    }
+
+    private int find(int[] bucket, double x, double y, double z, int found) {
+        if (bucket == null) return found;
+
+        for (int b = 1; b <= bucket[0]; b++) {
+            int i = bucket[b];
+            if (found >= 0 && i > found) break;
+            if (matches(i, x, y, z)) found = i;
+        }
+        return found;
+    }
+
+    private boolean matches(int i, double x, double y, double z) {
+        double px = points[i * 3], py = points[i * 3 + 1], pz = points[i * 3 + 2];
+        if (tolerance == 0) return px == x && py == y && pz == z;
+        return Math.abs(px - x) <= tolerance && Math.abs(py - y) <= tolerance && Math.abs(pz - z) <= tolerance;
+    }
+
+    /**
+     * @return The index of the first point matching x, y, z, adding it as a new point if there is none
+     */
+    public int add(double x, double y, double z) {
+        int found = find(x, y, z);
+        if (found >= 0) return found;
+
+        if (size * 3 == points.length) points = Arrays.copyOf(points, points.length * 2);
+        points[size * 3] = x;
+        points[size * 3 + 1] = y;
+        points[size * 3 + 2] = z;
+
+        long key = tolerance == 0 ? hash(bits(x), bits(y), bits(z)) : hash(cell(x), cell(y), cell(z));
+        int[] bucket = buckets.get(key);
+        if (bucket == null) buckets.put(key, bucket = new int[4]);
+        else if (bucket[0] + 1 == bucket.length) buckets.put(key, bucket = Arrays.copyOf(bucket, bucket.length * 2));
+        bucket[++bucket[0]] = size;
+        return size++;
+    }
+
+    public int add(Vector3 v) {
+        return add(v.x, v.y, v.z);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The first point added with the given index
+     */
+    public Vector3 get(int i, Vector3 v) {
+        return v.set(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]);
+    }
+}
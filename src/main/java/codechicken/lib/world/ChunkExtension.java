@@ -1,6 +1,7 @@
 package codechicken.lib.world;
 
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTTagCompound;
@@ -8,6 +9,9 @@ import net.minecraft.network.Packet;
 import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.chunk.Chunk;
 
+import codechicken.lib.packet.PacketBatcher;
+import codechicken.lib.packet.PacketCustom;
+
 public abstract class ChunkExtension {
 
     public final Chunk chunk;
@@ -15,6 +19,9 @@ public abstract class ChunkExtension {
     public final WorldExtension world;
     public HashSet<EntityPlayerMP> watchedPlayers;
 
+    final AtomicBoolean dirty = new AtomicBoolean();
+    long dirtyTime;
+
     public ChunkExtension(Chunk chunk, WorldExtension world) {
         this.chunk = chunk;
         coord = chunk.getChunkCoordIntPair();
@@ -34,6 +41,13 @@ public abstract class ChunkExtension {
         for (EntityPlayerMP player : watchedPlayers) player.playerNetServerHandler.sendPacket(packet);
     }
 
+    /**
+     * Queues packet for all watching players, to be sent with their other batched packets at the end of the tick
+     */
+    public final void sendPacketToPlayers(PacketCustom packet) {
+        PacketBatcher.sendToPlayers(packet, watchedPlayers);
+    }
+
     public final void watchPlayer(EntityPlayerMP player) {
         watchedPlayers.add(player);
         onWatchPlayer(player);
@@ -48,8 +62,20 @@ public abstract class ChunkExtension {
 
     public void onUnWatchPlayer(EntityPlayerMP player) {}
 
+    /**
+     * Called at the end of a world tick after {@link #queueUpdate()}, or later if the world's {@link ChunkUpdateQueue}
+     * budget for the tick has been spent
+     */
     public void sendUpdatePackets() {}
 
+    /**
+     * Queues this chunk for {@link #sendUpdatePackets()}. Safe to call from any thread, and only queues the chunk once
+     * until it is updated
+     */
+    public void queueUpdate() {
+        if (dirty.compareAndSet(false, true)) world.updateQueue.add(this);
+    }
+
     @Override
     public int hashCode() {
         return coord.chunkXPos ^ coord.chunkZPos;
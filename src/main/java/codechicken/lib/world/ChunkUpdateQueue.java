@@ -0,0 +1,105 @@
+package codechicken.lib.world;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chunk extensions of one {@link WorldExtension} waiting to send updates. Extensions are added by
+ * {@link ChunkExtension#queueUpdate()} from any thread, and drained at the end of each world tick by
+ * {@link WorldExtensionManager}, which calls {@link ChunkExtension#sendUpdatePackets()} on each in the order they were
+ * queued until the tick's budget is spent. The rest carry over to the next tick, ahead of newly queued chunks.
+ */
+public class ChunkUpdateQueue {
+
+    /**
+     * The most chunks to update per world per tick
+     */
+    public static int maxUpdatesPerTick = 512;
+    /**
+     * Stop updating chunks in a world once this many nanoseconds have been spent in a tick. At least one chunk is
+     * always updated
+     */
+    public static long maxNanosPerTick = 2000000;
+
+    private final ConcurrentLinkedQueue<ChunkExtension> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private int lastUpdates;
+    private long lastNanos;
+    private long lastMaxLatency;
+    private long totalUpdates;
+    private long totalLatency;
+
+    void add(ChunkExtension extension) {
+        extension.dirtyTime = System.nanoTime();
+        size.incrementAndGet();
+        queue.add(extension);
+    }
+
+    /**
+     * Updates queued chunks until the budget for this tick is spent
+     */
+    public void drain() {
+        long start = System.nanoTime();
+        int updates = 0;
+        long maxLatency = 0;
+        ChunkExtension extension;
+        while ((updates == 0 || updates < maxUpdatesPerTick && System.nanoTime() - start < maxNanosPerTick)
+                && (extension = queue.poll()) != null) {
+            size.decrementAndGet();
+            // queueing an update while sending adds the chunk again for a later drain
+            extension.dirty.set(false);
+            if (!extension.chunk.isChunkLoaded) continue;
+
+            long latency = start - extension.dirtyTime;
+            if (latency > maxLatency) maxLatency = latency;
+            totalLatency += latency;
+            extension.sendUpdatePackets();
+            updates++;
+        }
+
+        lastUpdates = updates;
+        lastNanos = System.nanoTime() - start;
+        lastMaxLatency = maxLatency;
+        totalUpdates += updates;
+    }
+
+    /**
+     * @return The number of chunks waiting to be updated
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return The number of chunks updated in the last drain
+     */
+    public int getLastUpdates() {
+        return lastUpdates;
+    }
+
+    /**
+     * @return The nanoseconds spent in the last drain
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return The longest time in nanoseconds a chunk updated in the last drain spent waiting in the queue
+     */
+    public long getLastMaxLatency() {
+        return lastMaxLatency;
+    }
+
+    /**
+     * @return The mean time in nanoseconds updated chunks have spent waiting in the queue
+     */
+    public long getAverageLatency() {
+        return totalUpdates == 0 ? 0 : totalLatency / totalUpdates;
+    }
+
+    public long getTotalUpdates() {
+        return totalUpdates;
+    }
+}
@@ -0,0 +1,192 @@
+package codechicken.lib.world;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.management.PlayerManager;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.ChunkCoordIntPair;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.world.ChunkWatchEvent.UnWatch;
+import net.minecraftforge.event.world.ChunkWatchEvent.Watch;
+import net.minecraftforge.event.world.WorldEvent;
+
+import codechicken.lib.util.LongObjectMap;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+
+/**
+ * Tracks the players watching each chunk of each server world from chunk watch events, so packets for a chunk can be
+ * sent to its watchers without testing every player on the server. Until {@link #init()} has been called lookups fall
+ * back to scanning the player list.
+ * <p>
+ * Players that have not yet been sent the chunk they are standing in, after joining a world or teleporting, are kept in
+ * a separate set per world, so range lookups still find them.
+ */
+public class ChunkWatcherIndex {
+
+    public static class WatcherEventHandler {
+
+        @SubscribeEvent
+        public void onChunkWatch(Watch event) {
+            watch(event.player.worldObj, event.chunk, event.player);
+            Set<EntityPlayerMP> players = unsettled.get(event.player.worldObj);
+            if (players != null && players.contains(event.player) && isWatchingOwnChunk(event.player))
+                players.remove(event.player);
+        }
+
+        @SubscribeEvent
+        public void onChunkUnWatch(UnWatch event) {
+            unwatch(event.player.worldObj, event.chunk, event.player);
+            // teleporting unwatches the old chunks before the new ones are sent
+            if (!isWatchingOwnChunk(event.player)) unsettle(event.player);
+        }
+
+        @SubscribeEvent
+        public void onEntityJoinWorld(EntityJoinWorldEvent event) {
+            if (event.entity instanceof EntityPlayerMP && !event.world.isRemote)
+                unsettle((EntityPlayerMP) event.entity);
+        }
+
+        @SubscribeEvent
+        public void onWorldUnLoad(WorldEvent.Unload event) {
+            worlds.remove(event.world);
+            unsettled.remove(event.world);
+        }
+    }
+
+    private static boolean initialised;
+    private static final Map<World, LongObjectMap<List<EntityPlayerMP>>> worlds = new IdentityHashMap<>();
+    // players in each world that may not be watching the chunk they are standing in
+    private static final Map<World, Set<EntityPlayerMP>> unsettled = new IdentityHashMap<>();
+
+    public static void init() {
+        if (initialised) return;
+        initialised = true;
+        MinecraftForge.EVENT_BUS.register(new WatcherEventHandler());
+    }
+
+    private static void watch(World world, ChunkCoordIntPair coord, EntityPlayerMP player) {
+        if (world.isRemote) return;
+
+        LongObjectMap<List<EntityPlayerMP>> chunks = worlds.get(world);
+        if (chunks == null) worlds.put(world, chunks = new LongObjectMap<>());
+
+        long key = LongObjectMap.key(coord.chunkXPos, coord.chunkZPos);
+        List<EntityPlayerMP> watchers = chunks.get(key);
+        if (watchers == null) chunks.put(key, watchers = new ArrayList<>(2));
+        if (!watchers.contains(player)) watchers.add(player);
+    }
+
+    private static void unsettle(EntityPlayerMP player) {
+        Set<EntityPlayerMP> players = unsettled.get(player.worldObj);
+        if (players == null)
+            unsettled.put(player.worldObj, players = Collections.newSetFromMap(new IdentityHashMap<>()));
+        players.add(player);
+    }
+
+    private static boolean isWatchingOwnChunk(EntityPlayerMP player) {
+        LongObjectMap<List<EntityPlayerMP>> chunks = worlds.get(player.worldObj);
+        if (chunks == null) return false;
+
+        List<EntityPlayerMP> watchers = chunks
+                .get(MathHelper.floor_double(player.posX) >> 4, MathHelper.floor_double(player.posZ) >> 4);
+        return watchers != null && watchers.contains(player);
+    }
+
+    private static void unwatch(World world, ChunkCoordIntPair coord, EntityPlayerMP player) {
+        long key = LongObjectMap.key(coord.chunkXPos, coord.chunkZPos);
+        // the player may already have been moved to another world when changing dimension
+        if (remove(worlds.get(world), key, player)) return;
+        for (LongObjectMap<List<EntityPlayerMP>> chunks : worlds.values()) if (remove(chunks, key, player)) return;
+    }
+
+    private static boolean remove(LongObjectMap<List<EntityPlayerMP>> chunks, long key, EntityPlayerMP player) {
+        if (chunks == null) return false;
+
+        List<EntityPlayerMP> watchers = chunks.get(key);
+        if (watchers == null || !watchers.remove(player)) return false;
+
+        if (watchers.isEmpty()) chunks.remove(key);
+        return true;
+    }
+
+    /**
+     * @return The players that have been sent the chunk at chunkX, chunkZ. The list must not be modified
+     */
+    @SuppressWarnings("unchecked")
+    public static List<EntityPlayerMP> getWatchers(World world, int chunkX, int chunkZ) {
+        if (!initialised) {
+            PlayerManager playerManager = ((WorldServer) world).getPlayerManager();
+            List<EntityPlayerMP> watchers = new ArrayList<>();
+            for (EntityPlayerMP player : (List<EntityPlayerMP>) MinecraftServer.getServer()
+                    .getConfigurationManager().playerEntityList)
+                if (playerManager.isPlayerWatchingChunk(player, chunkX, chunkZ)) watchers.add(player);
+            return watchers;
+        }
+
+        LongObjectMap<List<EntityPlayerMP>> chunks = worlds.get(world);
+        List<EntityPlayerMP> watchers = chunks == null ? null : chunks.get(chunkX, chunkZ);
+        return watchers == null ? Collections.emptyList() : watchers;
+    }
+
+    /**
+     * @return Each player watching at least one of the chunks, once
+     */
+    public static Collection<EntityPlayerMP> getWatchers(World world, Collection<ChunkCoordIntPair> coords) {
+        Map<EntityPlayerMP, Boolean> players = new IdentityHashMap<>();
+        for (ChunkCoordIntPair coord : coords)
+            for (EntityPlayerMP player : getWatchers(world, coord.chunkXPos, coord.chunkZPos))
+                players.put(player, Boolean.TRUE);
+        return players.keySet();
+    }
+
+    /**
+     * @return Each player in world within range of x, y, z, once. The same players as
+     *         {@link net.minecraft.server.management.ServerConfigurationManager#sendToAllNear}
+     */
+    public static Collection<EntityPlayerMP> getPlayersInRange(World world, double x, double y, double z,
+            double range) {
+        Set<EntityPlayerMP> players = Collections.newSetFromMap(new IdentityHashMap<>());
+        int minX = (int) Math.floor(x - range) >> 4;
+        int maxX = (int) Math.floor(x + range) >> 4;
+        int minZ = (int) Math.floor(z - range) >> 4;
+        int maxZ = (int) Math.floor(z + range) >> 4;
+        double rangeSq = range * range;
+
+        // a player in range is standing in one of the chunks, and watching it unless they are unsettled
+        for (int cx = minX; cx <= maxX; cx++) for (int cz = minZ; cz <= maxZ; cz++)
+            for (EntityPlayerMP player : getWatchers(world, cx, cz))
+                if (player.worldObj == world && player.getDistanceSq(x, y, z) < rangeSq) players.add(player);
+
+        Set<EntityPlayerMP> pending = unsettled.get(world);
+        if (pending != null) for (Iterator<EntityPlayerMP> it = pending.iterator(); it.hasNext();) {
+            EntityPlayerMP player = it.next();
+            if (player.isDead || player.worldObj != world || isWatchingOwnChunk(player)) it.remove();
+            else if (player.getDistanceSq(x, y, z) < rangeSq) players.add(player);
+        }
+        return players;
+    }
+
+    /**
+     * @return The number of chunks getPlayersInRange will look up
+     */
+    public static int chunkArea(double x, double z, double range) {
+        return (((int) Math.floor(x + range) >> 4) - ((int) Math.floor(x - range) >> 4) + 1)
+                * (((int) Math.floor(z + range) >> 4) - ((int) Math.floor(z - range) >> 4) + 1);
+    }
+
+    public static boolean initialised() {
+        return initialised;
+    }
+}
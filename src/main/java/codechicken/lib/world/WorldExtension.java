@@ -1,16 +1,24 @@
 package codechicken.lib.world;
 
-import java.util.HashMap;
-
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.world.ChunkCoordIntPair;
 import net.minecraft.world.World;
 import net.minecraft.world.chunk.Chunk;
 
+import codechicken.lib.util.LongObjectMap;
+
 public abstract class WorldExtension {
 
     public final World world;
-    public HashMap<Chunk, ChunkExtension> chunkMap = new HashMap<Chunk, ChunkExtension>();
+    /**
+     * Chunk extensions keyed by {@link LongObjectMap#key} of their chunk coordinates
+     */
+    public LongObjectMap<ChunkExtension> chunkMap = new LongObjectMap<>(256);
+    /**
+     * Chunks waiting to send updates, drained after {@link #postTick()}
+     */
+    public final ChunkUpdateQueue updateQueue = new ChunkUpdateQueue();
 
     public WorldExtension(World world) {
         this.world = world;
@@ -27,50 +35,70 @@ public abstract class WorldExtension {
     public void postTick() {}
 
     protected final void addChunk(ChunkExtension extension) {
-        chunkMap.put(extension.chunk, extension);
+        chunkMap.put(key(extension.chunk), extension);
     }
 
     protected final void loadChunk(Chunk chunk) {
-        chunkMap.get(chunk).load();
+        getChunkExtension(chunk).load();
     }
 
     protected final void unloadChunk(Chunk chunk) {
-        if (chunkMap.get(chunk) != null) chunkMap.get(chunk).unload();
+        final ChunkExtension extension = getChunkExtension(chunk);
+        if (extension != null) extension.unload();
     }
 
     protected final void loadChunkData(Chunk chunk, NBTTagCompound tag) {
-        chunkMap.get(chunk).loadData(tag);
+        getChunkExtension(chunk).loadData(tag);
     }
 
     protected final void saveChunkData(Chunk chunk, NBTTagCompound tag) {
-        final ChunkExtension extension = chunkMap.get(chunk);
+        final ChunkExtension extension = getChunkExtension(chunk);
         if (extension != null) extension.saveData(tag);
     }
 
     protected final void remChunk(Chunk chunk) {
-        chunkMap.remove(chunk);
+        chunkMap.remove(key(chunk));
     }
 
     protected final void watchChunk(Chunk chunk, EntityPlayerMP player) {
-        chunkMap.get(chunk).watchPlayer(player);
+        getChunkExtension(chunk).watchPlayer(player);
     }
 
     protected final void unwatchChunk(Chunk chunk, EntityPlayerMP player) {
-        ChunkExtension extension = chunkMap.get(chunk);
+        ChunkExtension extension = getChunkExtension(chunk);
+        if (extension != null) extension.unwatchPlayer(player);
+    }
+
+    protected final void watchChunk(ChunkCoordIntPair coord, EntityPlayerMP player) {
+        chunkMap.get(coord.chunkXPos, coord.chunkZPos).watchPlayer(player);
+    }
+
+    protected final void unwatchChunk(ChunkCoordIntPair coord, EntityPlayerMP player) {
+        ChunkExtension extension = chunkMap.get(coord.chunkXPos, coord.chunkZPos);
         if (extension != null) extension.unwatchPlayer(player);
     }
 
     protected final void sendChunkUpdates(Chunk chunk) {
-        chunkMap.get(chunk).sendUpdatePackets();
+        getChunkExtension(chunk).sendUpdatePackets();
     }
 
     public boolean containsChunk(Chunk chunk) {
-        return chunkMap.containsKey(chunk);
+        return chunkMap.containsKey(key(chunk));
     }
 
+    public ChunkExtension getChunkExtension(Chunk chunk) {
+        return chunkMap.get(key(chunk));
+    }
+
+    /**
+     * @return The extension for the chunk at chunkXPos, chunkZPos, or null if that chunk is not loaded
+     */
     public ChunkExtension getChunkExtension(int chunkXPos, int chunkZPos) {
-        if (!world.blockExists(chunkXPos << 4, 128, chunkZPos << 4)) return null;
+        ChunkExtension extension = chunkMap.get(chunkXPos, chunkZPos);
+        return extension != null && extension.chunk.isChunkLoaded ? extension : null;
+    }
 
-        return chunkMap.get(world.getChunkFromChunkCoords(chunkXPos, chunkZPos));
+    private static long key(Chunk chunk) {
+        return LongObjectMap.key(chunk.xPosition, chunk.zPosition);
     }
 }
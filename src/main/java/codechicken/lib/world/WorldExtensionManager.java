@@ -1,7 +1,7 @@
 package codechicken.lib.world;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.world.World;
@@ -81,11 +81,8 @@ public class WorldExtensionManager {
         public void onChunkWatch(Watch event) {
             WorldExtension[] extensions = worldMap.get(event.player.worldObj);
 
-            if (extensions != null) {
-                Chunk chunk = event.player.worldObj
-                        .getChunkFromChunkCoords(event.chunk.chunkXPos, event.chunk.chunkZPos);
-                for (WorldExtension extension : extensions) extension.watchChunk(chunk, event.player);
-            }
+            if (extensions != null)
+                for (WorldExtension extension : extensions) extension.watchChunk(event.chunk, event.player);
         }
 
         @SubscribeEvent
@@ -93,11 +90,8 @@ public class WorldExtensionManager {
         public void onChunkUnWatch(UnWatch event) {
             WorldExtension[] extensions = worldMap.get(event.player.worldObj);
 
-            if (extensions != null) {
-                Chunk chunk = event.player.worldObj
-                        .getChunkFromChunkCoords(event.chunk.chunkXPos, event.chunk.chunkZPos);
-                for (WorldExtension extension : extensions) extension.unwatchChunk(chunk, event.player);
-            }
+            if (extensions != null)
+                for (WorldExtension extension : extensions) extension.unwatchChunk(event.chunk, event.player);
         }
 
         @SubscribeEvent
@@ -133,7 +127,7 @@ public class WorldExtensionManager {
         FMLCommonHandler.instance().bus().register(new WorldExtensionEventHandler());
     }
 
-    private static HashMap<World, WorldExtension[]> worldMap = new HashMap<>();
+    private static IdentityHashMap<World, WorldExtension[]> worldMap = new IdentityHashMap<>();
 
     private static void onWorldLoad(World world) {
         WorldExtension[] extensions = new WorldExtension[extensionIntialisers.size()];
@@ -160,7 +154,10 @@ public class WorldExtensionManager {
     }
 
     private static void postTick(World world) {
-        for (WorldExtension extension : worldMap.get(world)) extension.postTick();
+        for (WorldExtension extension : worldMap.get(world)) {
+            extension.postTick();
+            extension.updateQueue.drain();
+        }
     }
 
     public static WorldExtension getWorldExtension(World world, int instantiatorID) {
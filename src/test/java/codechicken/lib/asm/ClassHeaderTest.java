@@ -0,0 +1,105 @@
+package codechicken.lib.asm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+public class ClassHeaderTest {
+
+    private interface Marker extends Runnable, Callable<String> {}
+
+    private enum Mode {
+        A,
+        B
+    }
+
+    private static byte[] bytes(Class<?> c) throws IOException {
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(c.getName().replace('.', '/') + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) > 0;) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static String internalName(Class<?> c) {
+        return c == null ? null : c.getName().replace('.', '/');
+    }
+
+    @Test
+    public void matchesReflection() throws IOException {
+        Class<?>[] classes = { Object.class, String.class, HashMap.class, AbstractList.class, Runnable.class,
+                Marker.class, Mode.class, ClassHeaderTest.class, ClassHeader.class };
+        for (Class<?> c : classes) {
+            ClassHeader header = ClassHeader.read(bytes(c));
+            assertNotNull(header, c.getName());
+            assertEquals(internalName(c), header.name);
+            // interfaces extend Object in the class file, but have no superclass to reflection
+            assertEquals(c.isInterface() ? "java/lang/Object" : internalName(c.getSuperclass()), header.superName);
+            assertArrayEquals(
+                    Arrays.stream(c.getInterfaces()).map(ClassHeaderTest::internalName).toArray(),
+                    header.interfaces);
+            assertEquals(c.isInterface(), header.isInterface());
+        }
+    }
+
+    @Test
+    public void skipsEveryConstantType() {
+        ClassWriter cw = new ClassWriter(0);
+        // constants before the class name, so each one has to be skipped correctly to find it
+        cw.newConst(Long.MAX_VALUE);
+        cw.newConst(Double.MIN_VALUE);
+        cw.newConst(1.5F);
+        cw.newConst(42);
+        cw.newConst("café 漢字 \0");
+        cw.newMethodType("(J)D");
+        Handle bsm = new Handle(Opcodes.H_INVOKESTATIC, "a/B", "bsm", "()Ljava/lang/Object;");
+        cw.newHandle(Opcodes.H_GETFIELD, "a/B", "f", "I");
+        cw.newInvokeDynamic("run", "()V", bsm);
+        cw.newConst(Type.getType("[La/B;"));
+        cw.newField("a/B", "f", "I");
+        cw.newMethod("a/B", "m", "()V", true);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/Café漢", null, "p/Base",
+                new String[] { "p/I1", "p/éI2" });
+        cw.visitEnd();
+
+        ClassHeader header = ClassHeader.read(cw.toByteArray());
+        assertNotNull(header);
+        assertEquals("p/Café漢", header.name);
+        assertEquals("p/Base", header.superName);
+        assertArrayEquals(new Object[] { "p/I1", "p/éI2" }, header.interfaces);
+        assertFalse(header.isInterface());
+        assertTrue(header.extendsDirectly("p/Base"));
+        assertTrue(header.extendsDirectly("p/éI2"));
+        assertFalse(header.extendsDirectly("p/I3"));
+    }
+
+    @Test
+    public void rejectsInvalidBytes() throws IOException {
+        assertNull(ClassHeader.read(null));
+        assertNull(ClassHeader.read(new byte[0]));
+        assertNull(ClassHeader.read("not a class file".getBytes()));
+
+        byte[] bytes = bytes(ClassHeaderTest.class);
+        assertNull(ClassHeader.read(Arrays.copyOf(bytes, 64)));
+        bytes[0] = 0;
+        assertNull(ClassHeader.read(bytes));
+    }
+}
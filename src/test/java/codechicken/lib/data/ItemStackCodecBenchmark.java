@@ -0,0 +1,93 @@
+package codechicken.lib.data;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import codechicken.lib.packet.PacketCustom;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * {@link MCDataOutput#writeItemStacks(ItemStack[])} against writing each slot with
+ * {@link PacketCustom#writeItemStack(ItemStack)}, for inventories with the given fraction of slots filled. The encoded
+ * sizes are printed in setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemStackCodecBenchmark {
+
+    @Param({ "27", "54", "256" })
+    public int size;
+
+    @Param({ "0.1", "0.5", "1" })
+    public float fill;
+
+    private ItemStack[] stacks;
+    private ByteBuf compact;
+    private ByteBuf each;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        Item[] types = TestItems.create(8);
+        stacks = new ItemStack[size];
+        for (int i = 0; i < size; i++) if (rand.nextFloat() < fill) {
+            stacks[i] = new ItemStack(types[rand.nextInt(types.length)], 1 + rand.nextInt(64), rand.nextInt(16));
+            if (rand.nextInt(8) == 0) {
+                stacks[i].stackTagCompound = new NBTTagCompound();
+                stacks[i].stackTagCompound.setInteger("energy", rand.nextInt(100000));
+            }
+        }
+
+        compact = writeStacks().getByteBuf();
+        each = writeEach().getByteBuf();
+        System.out.println(
+                "\nsize " + size + ", fill " + fill + ": writeItemStacks " + compact.readableBytes()
+                        + " bytes, writeItemStack per slot " + each.readableBytes() + " bytes");
+    }
+
+    @Benchmark
+    public PacketCustom writeStacks() {
+        return new PacketCustom("bench", 1).writeItemStacks(stacks);
+    }
+
+    @Benchmark
+    public PacketCustom writeEach() {
+        PacketCustom packet = new PacketCustom("bench", 1);
+        packet.writeVarInt(stacks.length);
+        for (ItemStack stack : stacks) packet.writeItemStack(stack);
+        return packet;
+    }
+
+    @Benchmark
+    public ItemStack[] readStacks() {
+        return new PacketCustom(compact.duplicate()).readItemStacks();
+    }
+
+    @Benchmark
+    public ItemStack[] readEach() {
+        PacketCustom packet = new PacketCustom(each.duplicate());
+        ItemStack[] read = new ItemStack[packet.readVarInt()];
+        for (int i = 0; i < read.length; i++) read[i] = packet.readItemStack();
+        return read;
+    }
+}
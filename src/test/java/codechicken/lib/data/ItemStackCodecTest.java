@@ -0,0 +1,212 @@
+package codechicken.lib.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.packet.PacketCustom;
+import cpw.mods.fml.common.network.ByteBufUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+
+public class ItemStackCodecTest {
+
+    private static final Item[] items = TestItems.create(4);
+
+    private static PacketCustom packet() {
+        return new PacketCustom("test", 1);
+    }
+
+    private static PacketCustom readBack(PacketCustom out) {
+        return new PacketCustom(out.getByteBuf().copy());
+    }
+
+    private static ItemStack[] roundTrip(ItemStack[] stacks) {
+        return readBack(packet().writeItemStacks(stacks)).readItemStacks();
+    }
+
+    private static void assertStacksEqual(ItemStack[] expected, ItemStack[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            ItemStack a = expected[i], b = actual[i];
+            if (a == null) {
+                assertNull(b, "slot " + i);
+                continue;
+            }
+            assertSame(a.getItem(), b.getItem(), "slot " + i);
+            assertEquals(a.stackSize, b.stackSize, "slot " + i);
+            assertEquals(a.getItemDamage(), b.getItemDamage(), "slot " + i);
+            assertEquals(a.stackTagCompound, b.stackTagCompound, "slot " + i);
+        }
+    }
+
+    private static ItemStack randomStack(Random rand) {
+        ItemStack stack = new ItemStack(items[rand.nextInt(items.length)], 1 + rand.nextInt(64), rand.nextInt(32768));
+        if (rand.nextInt(4) == 0) {
+            stack.stackTagCompound = new NBTTagCompound();
+            stack.stackTagCompound.setInteger("energy", rand.nextInt());
+            if (rand.nextBoolean()) stack.stackTagCompound.setTag("display", new NBTTagCompound());
+        }
+        return stack;
+    }
+
+    @Test
+    public void roundTripsSparseArrays() {
+        Random rand = new Random(0);
+        for (int n = 0; n < 200; n++) {
+            ItemStack[] stacks = new ItemStack[rand.nextInt(300)];
+            float density = rand.nextFloat();
+            for (int i = 0; i < stacks.length; i++) if (rand.nextFloat() < density) stacks[i] = randomStack(rand);
+            assertStacksEqual(stacks, roundTrip(stacks));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyAndFullArrays() {
+        assertStacksEqual(new ItemStack[0], roundTrip(new ItemStack[0]));
+        assertStacksEqual(new ItemStack[54], roundTrip(new ItemStack[54]));
+
+        Random rand = new Random(1);
+        ItemStack[] full = new ItemStack[54];
+        for (int i = 0; i < full.length; i++) full[i] = randomStack(rand);
+        assertStacksEqual(full, roundTrip(full));
+    }
+
+    @Test
+    public void roundTripsTaggedStacks() {
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setString("name", "stack");
+        NBTTagCompound inner = new NBTTagCompound();
+        inner.setLong("l", Long.MIN_VALUE);
+        tag.setTag("inner", inner);
+
+        ItemStack[] stacks = new ItemStack[9];
+        stacks[0] = new ItemStack(items[0], 1, 0);
+        stacks[0].stackTagCompound = tag;
+        stacks[8] = new ItemStack(items[1], 64, 3);
+        stacks[8].stackTagCompound = new NBTTagCompound();
+        assertStacksEqual(stacks, roundTrip(stacks));
+    }
+
+    @Test
+    public void writesNegativeDamageAsZigzag() {
+        Item item = TestItems.add(new Item() {
+
+            @Override
+            public int getDamage(ItemStack stack) {
+                return -3;
+            }
+        });
+        ItemStack[] stacks = { new ItemStack(item, 1, 0) };
+
+        PacketCustom in = readBack(packet().writeItemStacks(stacks));
+        assertEquals(1, in.readVarInt());
+        assertEquals(1, in.readVarInt());
+        assertEquals(0, in.readVarInt());
+        assertEquals(Item.getIdFromItem(item), in.readVarInt());
+        assertEquals(5, in.readVarInt());
+
+        assertStacksEqual(stacks, roundTrip(stacks));
+    }
+
+    @Test
+    public void roundTripsLargeAndNegativeSizes() {
+        int[] sizes = { 0, 127, 128, 1000, 1 << 20, (1 << 30) - 1, -1, -(1 << 30) };
+        ItemStack[] stacks = new ItemStack[sizes.length];
+        for (int i = 0; i < sizes.length; i++) stacks[i] = new ItemStack(items[i % items.length], sizes[i], i);
+        assertStacksEqual(stacks, roundTrip(stacks));
+
+        ItemStack[] tooLarge = { new ItemStack(items[0], 1 << 30, 0) };
+        assertThrows(IllegalArgumentException.class, () -> packet().writeItemStacks(tooLarge));
+    }
+
+    @Test
+    public void smallerThanWritingEachStack() {
+        Random rand = new Random(2);
+        ItemStack[] stacks = new ItemStack[54];
+        for (int i = 0; i < stacks.length; i += 9) stacks[i] = randomStack(rand);
+
+        PacketCustom each = packet();
+        for (ItemStack stack : stacks) each.writeItemStack(stack);
+        PacketCustom compact = packet().writeItemStacks(stacks);
+        assertTrue(compact.getByteBuf().readableBytes() < each.getByteBuf().readableBytes());
+    }
+
+    private static PacketCustom varInts(int... values) {
+        PacketCustom out = packet();
+        for (int v : values) out.writeVarInt(v);
+        return readBack(out);
+    }
+
+    @Test
+    public void rejectsBadLengths() {
+        assertThrows(DecoderException.class, () -> varInts(MCDataInput.MAX_ITEM_STACKS + 1, 0).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(Integer.MAX_VALUE, 0).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(-1, 0).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(4, 5).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(4, -1).readItemStacks());
+
+        assertEquals(MCDataInput.MAX_ITEM_STACKS, varInts(MCDataInput.MAX_ITEM_STACKS, 0).readItemStacks().length);
+    }
+
+    @Test
+    public void rejectsSlotsOutOfBounds() {
+        int id = Item.getIdFromItem(items[0]);
+        assertThrows(DecoderException.class, () -> varInts(4, 1, 4, id, 0, 2).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(4, 1, -1, id, 0, 2).readItemStacks());
+        assertThrows(DecoderException.class, () -> varInts(4, 2, 3, id, 0, 2, 0, id, 0, 2).readItemStacks());
+
+        ItemStack[] last = varInts(4, 2, 2, id, 0, 2, 0, id, 0, 2).readItemStacks();
+        assertEquals(1, last[2].stackSize);
+        assertEquals(1, last[3].stackSize);
+    }
+
+    @Test
+    public void wrapperVarIntsMatchByteBufUtils() throws IOException {
+        int[] values = { 0, 1, 127, 128, 255, 256, 300, 16383, 16384, 1 << 21, (1 << 28) - 1, 1 << 28,
+                Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+        for (int v : values) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            MCDataOutputWrapper.writeVarInt(new DataOutputStream(bytes), v);
+
+            ByteBuf expected = Unpooled.buffer();
+            ByteBufUtils.writeVarInt(expected, v, 5);
+            byte[] expectedBytes = new byte[expected.readableBytes()];
+            expected.readBytes(expectedBytes);
+
+            assertArrayEquals(expectedBytes, bytes.toByteArray(), "value " + v);
+            assertEquals(v, ByteBufUtils.readVarInt(Unpooled.wrappedBuffer(bytes.toByteArray()), 5));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MCDataOutputWrapper.writeVarInt(new DataOutputStream(bytes), 256);
+        assertArrayEquals(new byte[] { (byte) 0x80, 0x02 }, bytes.toByteArray());
+    }
+
+    @Test
+    public void wrapperWritesReadableItemStacks() {
+        Random rand = new Random(3);
+        ItemStack[] stacks = new ItemStack[200];
+        for (int i = 0; i < stacks.length; i += 1 + rand.nextInt(20)) stacks[i] = randomStack(rand);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(1);
+        new MCDataOutputWrapper(new DataOutputStream(bytes)).writeItemStacks(stacks);
+        assertStacksEqual(stacks, new PacketCustom(Unpooled.wrappedBuffer(bytes.toByteArray())).readItemStacks());
+    }
+}
@@ -0,0 +1,54 @@
+package codechicken.lib.data;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import net.minecraft.item.Item;
+import net.minecraft.util.ObjectIntIdentityMap;
+
+/**
+ * Items with ids for tests. Registering through Forge needs a loaded game, so the items are put straight into the id
+ * map behind {@link Item#itemRegistry}.
+ */
+final class TestItems {
+
+    private static final int FIRST_ID = 30000;
+    private static int nextId = FIRST_ID;
+
+    private TestItems() {}
+
+    static Item create() {
+        return add(new Item());
+    }
+
+    static synchronized <T extends Item> T add(T item) {
+        if (Item.getIdFromItem(item) < 0) register(item, nextId++);
+        return item;
+    }
+
+    static Item[] create(int count) {
+        Item[] items = new Item[count];
+        for (int i = 0; i < count; i++) items[i] = create();
+        return items;
+    }
+
+    private static void register(Item item, int id) {
+        try {
+            for (Class<?> c = Item.itemRegistry.getClass(); c != null; c = c.getSuperclass())
+                for (Field f : c.getDeclaredFields()) if (f.getType() == ObjectIntIdentityMap.class) {
+                    f.setAccessible(true);
+                    Object ids = f.get(Item.itemRegistry);
+                    for (Method m : ObjectIntIdentityMap.class.getDeclaredMethods())
+                        if (m.getReturnType() == void.class
+                                && Arrays.equals(m.getParameterTypes(), new Class<?>[] { Object.class, int.class })) {
+                            m.invoke(ids, item, id);
+                            return;
+                        }
+                }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        throw new IllegalStateException("No id map in the item registry");
+    }
+}
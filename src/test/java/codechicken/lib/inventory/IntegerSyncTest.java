@@ -0,0 +1,102 @@
+package codechicken.lib.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import codechicken.lib.packet.PacketCustom;
+
+public class IntegerSyncTest {
+
+    private static class Value extends IntegerSync {
+
+        int value;
+
+        @Override
+        public int getValue() {
+            return value;
+        }
+    }
+
+    private static PacketCustom readBack(PacketCustom out) {
+        return new PacketCustom(out.getByteBuf().copy());
+    }
+
+    /**
+     * Sends the change from server to client the way ContainerSynchronised does
+     *
+     * @return The number of bytes the change took
+     */
+    private static int sync(Value server, Value client) {
+        PacketCustom out = new PacketCustom("test", 1);
+        server.writeChange(out);
+        server.reset();
+        int bytes = out.getByteBuf().readableBytes() - 1;
+        client.readChange(readBack(out));
+        return bytes;
+    }
+
+    @Test
+    public void deltasTrackValue() {
+        int[] values = { 0, 1, -1, 63, 64, -64, -65, 1000, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, 0,
+                Integer.MIN_VALUE, -1, Integer.MAX_VALUE };
+        Value server = new Value(), client = new Value();
+        for (int v : values) {
+            server.value = v;
+            sync(server, client);
+            assertFalse(server.changed());
+            assertEquals(v, client.c_value);
+        }
+
+        Random rand = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            server.value = rand.nextBoolean() ? rand.nextInt() : server.value + rand.nextInt(201) - 100;
+            sync(server, client);
+            assertEquals(server.value, client.c_value);
+        }
+    }
+
+    @Test
+    public void smallDeltasTakeOneByte() {
+        Value server = new Value(), client = new Value();
+        server.value = client.c_value = server.c_value = 5000;
+        for (int delta = -64; delta < 64; delta++) if (delta != 0) {
+            server.value += delta;
+            assertTrue(server.changed());
+            assertEquals(1, sync(server, client), "delta " + delta);
+            assertEquals(server.value, client.c_value);
+        }
+
+        server.value += 64;
+        assertEquals(2, sync(server, client));
+        server.value = Integer.MIN_VALUE;
+        assertEquals(5, sync(server, client));
+    }
+
+    @Test
+    public void fullSyncSendsLastResetValue() {
+        Value server = new Value(), watching = new Value();
+        server.value = 12345;
+        sync(server, watching);
+        // a player opening the container before the next change is sent gets the value the others already have
+        server.value = 12400;
+
+        Value joining = new Value();
+        PacketCustom out = new PacketCustom("test", 1);
+        server.writeFull(out);
+        joining.readFull(readBack(out));
+        assertEquals(12345, joining.c_value);
+
+        PacketCustom change = new PacketCustom("test", 1);
+        server.writeChange(change);
+        server.reset();
+        watching.readChange(readBack(change));
+        joining.readChange(readBack(change));
+        assertEquals(12400, watching.c_value);
+        assertEquals(12400, joining.c_value);
+    }
+}
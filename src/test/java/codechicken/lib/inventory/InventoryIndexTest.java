@@ -0,0 +1,157 @@
+package codechicken.lib.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import net.minecraft.inventory.ISidedInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.junit.jupiter.api.Test;
+
+public class InventoryIndexTest {
+
+    private static final Item[] types = { new Item(), new Item(), new Item().setMaxStackSize(16),
+            new Item().setMaxStackSize(1), new Item().setHasSubtypes(true) };
+
+    /**
+     * Rejects the first item type in every fifth slot, and invalidates its index when changed
+     */
+    private static class TestInventory extends InventorySimple {
+
+        InventoryIndex index;
+
+        TestInventory(int size, int limit) {
+            super(size, limit);
+        }
+
+        @Override
+        public boolean isItemValidForSlot(int slot, ItemStack stack) {
+            return slot % 5 != 0 || stack.getItem() != types[0];
+        }
+
+        @Override
+        public void markDirty() {
+            if (index != null) index.invalidate();
+        }
+    }
+
+    /**
+     * Exposes the odd slots from side 1, last first, and only accepts unstackable items in slots below 8
+     */
+    private static class SidedInventory extends TestInventory implements ISidedInventory {
+
+        SidedInventory(int size, int limit) {
+            super(size, limit);
+        }
+
+        @Override
+        public int[] getAccessibleSlotsFromSide(int side) {
+            int[] slots = new int[items.length / 2];
+            for (int i = 0; i < slots.length; i++) slots[i] = items.length - 1 - i * 2;
+            return slots;
+        }
+
+        @Override
+        public boolean canInsertItem(int slot, ItemStack stack, int side) {
+            return slot >= 8 || stack.getMaxStackSize() == 1;
+        }
+
+        @Override
+        public boolean canExtractItem(int slot, ItemStack stack, int side) {
+            return true;
+        }
+    }
+
+    private static ItemStack randomStack(Random rand, TestInventory inv) {
+        ItemStack stack = randomStack(rand);
+        stack.stackSize = Math.min(stack.stackSize, Math.min(stack.getMaxStackSize(), inv.getInventoryStackLimit()));
+        return stack;
+    }
+
+    private static ItemStack randomStack(Random rand) {
+        Item item = types[rand.nextInt(types.length)];
+        ItemStack stack = new ItemStack(item, 1 + rand.nextInt(Math.min(64, item.getItemStackLimit()) + 8),
+                item.getHasSubtypes() ? rand.nextInt(3) : 0);
+        if (rand.nextInt(5) == 0) {
+            stack.stackTagCompound = new NBTTagCompound();
+            stack.stackTagCompound.setInteger("n", rand.nextInt(2));
+        }
+        return stack;
+    }
+
+    private static void assertSameContents(TestInventory expected, TestInventory actual, String message) {
+        for (int i = 0; i < expected.items.length; i++)
+            assertTrue(ItemStack.areItemStacksEqual(expected.items[i], actual.items[i]), message + ", slot " + i);
+    }
+
+    /**
+     * Inserts the same random stacks into two copies of an inventory, through an index and through
+     * {@link InventoryUtils#insertItem(InventoryRange, ItemStack, boolean)}, with occasional changes made to both
+     * inventories from outside
+     */
+    private static void assertMatchesInsertItem(TestInventory expected, TestInventory actual,
+            Function<TestInventory, InventoryRange> range) {
+        Random rand = new Random(0);
+        for (int i = 0; i < expected.items.length; i++) if (rand.nextInt(3) == 0) {
+            ItemStack stack = randomStack(rand, expected);
+            expected.items[i] = stack;
+            actual.items[i] = stack.copy();
+        }
+
+        InventoryRange expectedRange = range.apply(expected);
+        InventoryIndex index = actual.index = new InventoryIndex(range.apply(actual));
+        for (int op = 0; op < 5000; op++) {
+            String message = "op " + op;
+            if (rand.nextInt(10) == 0) {
+                int slot = rand.nextInt(expected.items.length);
+                ItemStack stack = rand.nextInt(3) == 0 ? null : randomStack(rand, expected);
+                expected.setInventorySlotContents(slot, stack);
+                actual.setInventorySlotContents(slot, stack == null ? null : stack.copy());
+                continue;
+            }
+
+            ItemStack stack = randomStack(rand);
+            assertEquals(
+                    InventoryUtils.getInsertibleQuantity(expectedRange, stack),
+                    index.getInsertibleQuantity(stack),
+                    message);
+            boolean simulate = rand.nextInt(4) == 0;
+            assertEquals(
+                    InventoryUtils.insertItem(expectedRange, stack, simulate),
+                    index.insertItem(stack.copy(), simulate),
+                    message);
+            assertSameContents(expected, actual, message);
+        }
+    }
+
+    @Test
+    public void matchesInsertItem() {
+        assertMatchesInsertItem(new TestInventory(54, 64), new TestInventory(54, 64), InventoryRange::new);
+    }
+
+    @Test
+    public void matchesInsertItemWithLowLimit() {
+        assertMatchesInsertItem(new TestInventory(27, 8), new TestInventory(27, 8), InventoryRange::new);
+    }
+
+    @Test
+    public void matchesInsertItemInSubRange() {
+        assertMatchesInsertItem(
+                new TestInventory(40, 64),
+                new TestInventory(40, 64),
+                inv -> new InventoryRange(inv, 7, 20));
+    }
+
+    @Test
+    public void matchesInsertItemFromSide() {
+        assertMatchesInsertItem(
+                new SidedInventory(36, 64),
+                new SidedInventory(36, 64),
+                inv -> new InventoryRange(inv, 1));
+    }
+}
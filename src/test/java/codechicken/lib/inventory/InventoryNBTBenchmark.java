@@ -0,0 +1,114 @@
+package codechicken.lib.inventory;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Slot churn on an {@link InventoryNBT}: each op sets one random slot to a new stack or empties it, against rewriting
+ * the whole items list as {@link InventoryUtils#writeItemStacksToTag(ItemStack[])} did before slots were patched.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryNBTBenchmark {
+
+    private static final int OPS = 4096;
+
+    @Param({ "27", "54", "256" })
+    public int size;
+
+    private final int[] slots = new int[OPS];
+    private final ItemStack[] stacks = new ItemStack[OPS];
+    private int op;
+
+    private InventoryNBT inv;
+    private InventoryNBT deferred;
+    private ItemStack[] items;
+    private NBTTagCompound tag;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(0);
+        Item[] types = new Item[8];
+        for (int i = 0; i < types.length; i++) types[i] = new Item();
+
+        for (int i = 0; i < OPS; i++) {
+            slots[i] = rand.nextInt(size);
+            if (rand.nextInt(4) == 0) continue;
+            stacks[i] = new ItemStack(types[rand.nextInt(types.length)], 1 + rand.nextInt(64), rand.nextInt(4));
+        }
+
+        inv = new InventoryNBT(size, new NBTTagCompound());
+        deferred = new InventoryNBT(size, new NBTTagCompound()).setDeferWrites(true);
+        items = new ItemStack[size];
+        tag = new NBTTagCompound();
+        for (int i = 0; i < size; i += 2) {
+            ItemStack stack = new ItemStack(types[i % types.length], 32, 0);
+            inv.setInventorySlotContents(i, stack);
+            deferred.setInventorySlotContents(i, stack);
+            items[i] = stack;
+        }
+        deferred.flush();
+    }
+
+    private int next() {
+        op = (op + 1) & (OPS - 1);
+        return op;
+    }
+
+    @Benchmark
+    public NBTTagCompound patched() {
+        int i = next();
+        inv.setInventorySlotContents(slots[i], stacks[i]);
+        return inv.tag;
+    }
+
+    /**
+     * Eight changes flushed together, as a machine changing several slots in one tick would
+     */
+    @Benchmark
+    public NBTTagCompound deferred8() {
+        for (int n = 0; n < 8; n++) {
+            int i = next();
+            deferred.setInventorySlotContents(slots[i], stacks[i]);
+        }
+        return deferred.getTag();
+    }
+
+    @Benchmark
+    public NBTTagCompound fullRewrite() {
+        int i = next();
+        items[slots[i]] = stacks[i];
+        tag.setTag("items", InventoryUtils.writeItemStacksToTag(items));
+        return tag;
+    }
+
+    @Benchmark
+    public NBTTagCompound fullRewrite8() {
+        for (int n = 0; n < 8; n++) {
+            int i = next();
+            items[slots[i]] = stacks[i];
+        }
+        tag.setTag("items", InventoryUtils.writeItemStacksToTag(items));
+        return tag;
+    }
+}
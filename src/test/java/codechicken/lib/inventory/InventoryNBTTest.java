@@ -0,0 +1,75 @@
+package codechicken.lib.inventory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NBTTagCompound;
+
+import org.junit.jupiter.api.Test;
+
+public class InventoryNBTTest {
+
+    private static final Item[] types = { new Item(), new Item(), new Item() };
+
+    private static ItemStack randomStack(Random rand) {
+        if (rand.nextInt(3) == 0) return null;
+        ItemStack stack = new ItemStack(types[rand.nextInt(types.length)], 1 + rand.nextInt(64), rand.nextInt(4));
+        if (rand.nextInt(4) == 0) {
+            stack.stackTagCompound = new NBTTagCompound();
+            stack.stackTagCompound.setInteger("n", rand.nextInt(3));
+        }
+        return stack;
+    }
+
+    private static NBTTagCompound fullWrite(InventoryNBT inv) {
+        NBTTagCompound tag = new NBTTagCompound();
+        tag.setTag("items", InventoryUtils.writeItemStacksToTag(inv.items));
+        return tag;
+    }
+
+    @Test
+    public void patchesMatchFullWrite() {
+        Random rand = new Random(0);
+        InventoryNBT inv = new InventoryNBT(27, new NBTTagCompound());
+        for (int i = 0; i < 5000; i++) {
+            int slot = rand.nextInt(27);
+            ItemStack stack = inv.getStackInSlot(slot);
+            if (stack != null && rand.nextBoolean()) {
+                stack.stackSize = 1 + rand.nextInt(64);
+                inv.markDirty();
+            } else inv.setInventorySlotContents(slot, randomStack(rand));
+
+            assertEquals(fullWrite(inv), inv.tag, "after op " + i);
+        }
+    }
+
+    @Test
+    public void sameContentsGiveEqualTags() {
+        Random rand = new Random(1);
+        ItemStack[] contents = new ItemStack[18];
+        for (int i = 0; i < contents.length; i++) contents[i] = randomStack(rand);
+
+        InventoryNBT forward = new InventoryNBT(18, new NBTTagCompound());
+        InventoryNBT churned = new InventoryNBT(18, new NBTTagCompound());
+        for (int i = 0; i < 18; i++) forward.setInventorySlotContents(i, contents[i]);
+        for (int i = 0; i < 500; i++) churned.setInventorySlotContents(rand.nextInt(18), randomStack(rand));
+        for (int i = 17; i >= 0; i--) churned.setInventorySlotContents(i, contents[i]);
+
+        assertEquals(forward.tag, churned.tag);
+    }
+
+    @Test
+    public void deferredWritesWaitForFlush() {
+        NBTTagCompound tag = new NBTTagCompound();
+        InventoryNBT inv = new InventoryNBT(9, tag).setDeferWrites(true);
+        inv.setInventorySlotContents(4, new ItemStack(types[0], 5, 0));
+        assertNotEquals(fullWrite(inv), tag);
+
+        assertEquals(fullWrite(inv), inv.getTag());
+        assertEquals(1, tag.getTagList("items", 10).tagCount());
+    }
+}
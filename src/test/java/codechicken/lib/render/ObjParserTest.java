@@ -0,0 +1,51 @@
+package codechicken.lib.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ObjParserTest {
+
+    private static double parse(String s) {
+        // pad both sides so the bounds are respected
+        char[] chars = (" x" + s + "y ").toCharArray();
+        return ObjParser.parseDouble(chars, 2, chars.length - 2);
+    }
+
+    private static void assertParsesLikeJava(String s) {
+        assertEquals(Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(parse(s)), s);
+    }
+
+    @Test
+    public void parsesLikeDoubleParseDouble() {
+        String[] values = { "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1.5", "1.", ".5", "-.5", "0.1", "0.2", "0.3",
+                "3.141592653589793", "1.0000000000000002", "123456789012345678", "1234567890123456789",
+                "9007199254740993", "0.000001", "0.0000000000000000000001", "0.00000000000000000000001",
+                "00000000000000000000001.5", "1e3", "1E-3", "-2.5e+10", "1.5e308", "4.9e-324", "999999999999999999",
+                "0.123456789012345678", "0.1234567890123456789" };
+        for (String s : values) assertParsesLikeJava(s);
+    }
+
+    @Test
+    public void parsesRandomCoordinates() {
+        Random rand = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            double d = (rand.nextDouble() - 0.5) * Math.pow(10, rand.nextInt(12) - 4);
+            assertParsesLikeJava(Double.toString(d));
+            assertParsesLikeJava(Float.toString((float) d));
+            assertParsesLikeJava(String.format(Locale.ROOT, "%." + rand.nextInt(10) + "f", d));
+            assertParsesLikeJava(String.format(Locale.ROOT, "%.6e", d));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedNumbers() {
+        String[] values = { "", "-", "+", ".", "1x", "x1", "1,5", "1..5", "1e", "1.5.5", "--1", "0x1p3", "NaN",
+                "Infinity" };
+        for (String s : values) assertThrows(NumberFormatException.class, () -> parse(s), s);
+    }
+}
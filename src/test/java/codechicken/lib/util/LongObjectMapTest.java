@@ -0,0 +1,83 @@
+package codechicken.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void packsCoordinates() {
+        int[] coords = { 0, 1, -1, 1875000, -1875000, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for (int x : coords) for (int z : coords) {
+            long key = LongObjectMap.key(x, z);
+            assertEquals(x, LongObjectMap.keyX(key));
+            assertEquals(z, LongObjectMap.keyZ(key));
+        }
+        assertTrue(LongObjectMap.key(-1, 0) != LongObjectMap.key(0, -1));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random rand = new Random(0);
+        LongObjectMap<String> map = new LongObjectMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        for (int n = 0; n < 100000; n++) {
+            // a small square of chunks around the origin, so keys collide and removals shift probe chains
+            long key = LongObjectMap.key(rand.nextInt(64) - 32, rand.nextInt(64) - 32);
+            int op = rand.nextInt(3);
+            if (op == 0) assertEquals(expected.remove(key), map.remove(key), "remove at op " + n);
+            else if (op == 1) assertEquals(expected.put(key, "v" + n), map.put(key, "v" + n), "put at op " + n);
+            else assertEquals(expected.get(key), map.get(key), "get at op " + n);
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (int x = -32; x < 32; x++) for (int z = -32; z < 32; z++) {
+            long key = LongObjectMap.key(x, z);
+            assertEquals(expected.get(key), map.get(x, z));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+
+        List<String> values = map.values();
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    @Test
+    public void growsAndEmpties() {
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            long key = LongObjectMap.key(i * 31, -i);
+            keys.add(key);
+            assertNull(map.put(key, i));
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < keys.size(); i++) assertEquals(i, (int) map.get(keys.get(i)));
+
+        for (int i = 0; i < keys.size(); i += 2) assertEquals(i, (int) map.remove(keys.get(i)));
+        assertEquals(5000, map.size());
+        for (int i = 0; i < keys.size(); i++) assertEquals(i % 2 == 0 ? null : (Integer) i, map.get(keys.get(i)));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(keys.get(1)));
+        assertNull(map.remove(keys.get(1)));
+    }
+
+    @Test
+    public void rejectsNullValues() {
+        assertThrows(NullPointerException.class, () -> new LongObjectMap<>().put(0, null));
+    }
+}
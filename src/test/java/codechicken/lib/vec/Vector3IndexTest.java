@@ -0,0 +1,92 @@
+package codechicken.lib.vec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class Vector3IndexTest {
+
+    /**
+     * The linear scan Vector3Index replaces: the first earlier point within tolerance of each point
+     */
+    private static int[] scan(double[][] points, double tolerance) {
+        int[] indices = new int[points.length];
+        double[][] added = new double[points.length][];
+        int size = 0;
+        for (int p = 0; p < points.length; p++) {
+            double[] a = points[p];
+            indices[p] = -1;
+            for (int i = 0; i < size && indices[p] < 0; i++) {
+                double[] b = added[i];
+                if (tolerance == 0 ? a[0] == b[0] && a[1] == b[1] && a[2] == b[2]
+                        : Math.abs(a[0] - b[0]) <= tolerance && Math.abs(a[1] - b[1]) <= tolerance
+                                && Math.abs(a[2] - b[2]) <= tolerance)
+                    indices[p] = i;
+            }
+            if (indices[p] < 0) added[indices[p] = size++] = a;
+        }
+        return indices;
+    }
+
+    private static double[][] randomPoints(Random rand, int count, double jitter) {
+        double[][] points = new double[count][];
+        for (int p = 0; p < count; p++) {
+            points[p] = new double[3];
+            // a coarse grid so many points land on or near each other, on both sides of 0
+            for (int c = 0; c < 3; c++) {
+                points[p][c] = (rand.nextInt(9) - 4) * 0.25;
+                if (rand.nextBoolean()) points[p][c] += (rand.nextDouble() - 0.5) * jitter;
+            }
+        }
+        return points;
+    }
+
+    private static void assertMatchesScan(double[][] points, double tolerance) {
+        int[] expected = scan(points, tolerance);
+        Vector3Index index = new Vector3Index(tolerance);
+        int size = 0;
+        for (int p = 0; p < points.length; p++) {
+            assertEquals(expected[p], index.add(points[p][0], points[p][1], points[p][2]), "point " + p);
+            size = Math.max(size, expected[p] + 1);
+        }
+        assertEquals(size, index.size());
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        Random rand = new Random(0);
+        double[] tolerances = { 0, 1e-5, 0.01, 0.1, 0.25, 0.3 };
+        for (double tolerance : tolerances) for (int n = 0; n < 20; n++)
+            assertMatchesScan(randomPoints(rand, 500, tolerance * 4), tolerance);
+    }
+
+    @Test
+    public void exactMatchesNegativeZero() {
+        Vector3Index index = new Vector3Index();
+        assertEquals(0, index.add(0, 0, 0));
+        assertEquals(0, index.add(-0.0, 0, -0.0));
+        assertEquals(1, index.add(Math.ulp(0.0), 0, 0));
+        assertEquals(-1, index.find(0, 0, 1));
+        assertEquals(0, index.find(-0.0, -0.0, -0.0));
+    }
+
+    @Test
+    public void returnsFirstPointAdded() {
+        Vector3Index index = new Vector3Index(0.1);
+        assertEquals(0, index.add(1, 1, 1));
+        assertEquals(0, index.add(1.05, 0.95, 1.09));
+        assertEquals(1, index.add(1.15, 1, 1));
+        // within tolerance of both, the lower index wins
+        assertEquals(0, index.add(1.08, 1, 1));
+        assertEquals(new Vector3(1, 1, 1), index.get(0, new Vector3()));
+        assertEquals(new Vector3(1.15, 1, 1), index.get(1, new Vector3()));
+    }
+
+    @Test
+    public void rejectsNegativeTolerance() {
+        assertThrows(IllegalArgumentException.class, () -> new Vector3Index(-1));
+    }
+}